@@ -21,11 +21,18 @@ package de.markusbordihn.dailyrewards;
 
 import de.markusbordihn.dailyrewards.client.screen.ClientScreens;
 import de.markusbordihn.dailyrewards.commands.CommandManager;
+import de.markusbordihn.dailyrewards.config.ConfigWatcher;
 import de.markusbordihn.dailyrewards.config.ModConfigs;
+import de.markusbordihn.dailyrewards.data.RewardData;
+import de.markusbordihn.dailyrewards.data.RewardUserData;
+import de.markusbordihn.dailyrewards.data.SavedDataWriter;
+import de.markusbordihn.dailyrewards.data.SpecialRewardUserData;
 import de.markusbordihn.dailyrewards.item.ModItems;
 import de.markusbordihn.dailyrewards.menu.ModMenuTypes;
 import de.markusbordihn.dailyrewards.network.NetworkHandler;
 import de.markusbordihn.dailyrewards.player.PlayerRewardManager;
+import de.markusbordihn.dailyrewards.rewards.RewardClock;
+import de.markusbordihn.dailyrewards.rewards.RewardPoolReloadListener;
 import de.markusbordihn.dailyrewards.rewards.Rewards;
 import de.markusbordihn.dailyrewards.utils.StopModReposts;
 import dev.architectury.event.events.common.CommandRegistrationEvent;
@@ -33,7 +40,9 @@ import dev.architectury.event.events.common.LifecycleEvent;
 import dev.architectury.event.events.common.PlayerEvent;
 import dev.architectury.event.events.common.TickEvent;
 import dev.architectury.platform.Platform;
+import dev.architectury.registry.ReloadListenerRegistry;
 import dev.architectury.utils.Env;
+import net.minecraft.server.packs.PackType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -60,7 +69,23 @@ public class DailyRewards {
     ModConfigs.registerConfigs();
 
     CommandRegistrationEvent.EVENT.register(CommandManager::handleRegisterCommandsEvent);
+    ReloadListenerRegistry.register(PackType.SERVER_DATA, new RewardPoolReloadListener());
     LifecycleEvent.SERVER_STARTING.register(ServerSetup::handleServerStartingEvent);
+    LifecycleEvent.SERVER_STARTING.register(ConfigWatcher::handleServerStartingEvent);
+    LifecycleEvent.SERVER_STOPPED.register(ConfigWatcher::handleServerStoppedEvent);
+
+    TickEvent.SERVER_PRE.register(RewardClock::handleServerTickEvent);
+    LifecycleEvent.SERVER_STOPPED.register(RewardClock::handleServerStoppedEvent);
+    LifecycleEvent.SERVER_STOPPED.register(SavedDataWriter::handleServerStoppedEvent);
+    LifecycleEvent.SERVER_STOPPED.register(RewardUserData::handleServerStoppedEvent);
+    LifecycleEvent.SERVER_STOPPED.register(SpecialRewardUserData::handleServerStoppedEvent);
+    TickEvent.SERVER_POST.register(RewardUserData::handleServerTickEvent);
+    TickEvent.SERVER_POST.register(SpecialRewardUserData::handleServerTickEvent);
+    RewardClock.registerDayChangeListener(PlayerRewardManager::handleDayChangeEvent);
+    RewardClock.registerDayChangeListener(RewardData::handleDayChangeEvent);
+    RewardClock.registerMonthChangeListener(RewardData::handleMonthChangeEvent);
+    RewardClock.registerMonthChangeListener(RewardUserData::handleMonthChangeEvent);
+    RewardClock.registerMonthChangeListener(SpecialRewardUserData::handleMonthChangeEvent);
 
     LifecycleEvent.SERVER_BEFORE_START.register(PlayerRewardManager::onServerAboutToStartEvent);
     PlayerEvent.PLAYER_JOIN.register(PlayerRewardManager::handlePlayerLoggedInEvent);
@@ -97,9 +97,9 @@ public class RewardCompactScreen extends RewardScreen<RewardCompactMenu> {
     // Update data cache only every 20 ticks to avoid expensive operations on higher fps.
     if ((this.updateTicker++ & (20 - 1)) == 0) {
       int localPlayerTickCount = localPlayer != null ? localPlayer.tickCount : 0;
-      String lastRewardedDay = this.menu.getLastRewardedDay();
+      int lastRewardedDay = this.menu.getLastRewardedDay();
       long nextRewardTime =
-          Rewards.getCurrentYearMonthDay().equals(lastRewardedDay)
+          Rewards.getCurrentEpochDay() == lastRewardedDay
               ? Duration.between(
                           LocalDateTime.now(),
                           LocalDateTime.now().withHour(23).withMinute(59).withSecond(59))
@@ -158,9 +158,9 @@ public class RewardCompactScreen extends RewardScreen<RewardCompactMenu> {
     // Update data cache only every 20 ticks to avoid expensive operations on higher fps.
     if ((this.updateSpecialTicker++ & (20 - 1)) == 0) {
       int localPlayerTickCount = localPlayer != null ? localPlayer.tickCount : 0;
-      String lastRewardedSpecialDay = this.menu.getLastRewardedSpecialDay();
+      int lastRewardedSpecialDay = this.menu.getLastRewardedSpecialDay();
       long nextRewardTime =
-          Rewards.getCurrentYearMonthDay().equals(lastRewardedSpecialDay)
+          Rewards.getCurrentEpochDay() == lastRewardedSpecialDay
               ? Duration.between(
                           LocalDateTime.now(),
                           LocalDateTime.now().withHour(23).withMinute(59).withSecond(59))
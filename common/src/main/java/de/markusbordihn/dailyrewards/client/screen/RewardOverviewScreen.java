@@ -83,9 +83,9 @@ public class RewardOverviewScreen<T extends RewardMenu> extends RewardScreen<T>
     // Update data cache only every 20 ticks to avoid expensive operations on higher fps.
     if ((this.updateTicker++ & (20 - 1)) == 0) {
       int localPlayerTickCount = localPlayer != null ? localPlayer.tickCount : 0;
-      String lastRewardedDay = this.menu.getLastRewardedDay();
+      int lastRewardedDay = this.menu.getLastRewardedDay();
       long nextRewardTime =
-          Rewards.getCurrentYearMonthDay().equals(lastRewardedDay)
+          Rewards.getCurrentEpochDay() == lastRewardedDay
               ? Duration.between(
                           LocalDateTime.now(),
                           LocalDateTime.now().withHour(23).withMinute(59).withSecond(59))
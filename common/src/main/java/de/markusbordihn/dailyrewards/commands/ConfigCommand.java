@@ -24,10 +24,13 @@ import com.mojang.brigadier.context.CommandContext;
 import de.markusbordihn.dailyrewards.config.ModConfigs;
 import de.markusbordihn.dailyrewards.data.RewardData;
 import de.markusbordihn.dailyrewards.data.RewardUserData;
+import de.markusbordihn.dailyrewards.data.RewardUserJournal;
+import de.markusbordihn.dailyrewards.data.RewardUserStorage;
 import de.markusbordihn.dailyrewards.data.SpecialRewardUserData;
 import java.util.List;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
 import net.minecraft.world.item.ItemStack;
 
 public class ConfigCommand extends CustomCommand {
@@ -38,6 +41,7 @@ public class ConfigCommand extends CustomCommand {
         .requires(cs -> cs.hasPermission(Commands.LEVEL_ADMINS))
         .executes(command)
         .then(Commands.literal("reload").executes(command::reloadConfig))
+        .then(Commands.literal("journal").executes(command::showJournalStatistics))
         .then(Commands.literal("reset").executes(command::resetConfig))
         .then(Commands.literal("clear").executes(command::clearConfig));
   }
@@ -50,6 +54,7 @@ public class ConfigCommand extends CustomCommand {
             Usage: /dailyrewards config [OPTION]
 
             - reload   Reloads the config file!
+            - journal  Shows the statistics of the reward user data journal.
             - reset    Resets the config file and clean the data!!.
             - clear    Cleans the config file and clear all data!!!
             """);
@@ -57,14 +62,43 @@ public class ConfigCommand extends CustomCommand {
   }
 
   public int reloadConfig(CommandContext<CommandSourceStack> context) {
+    if (!ModConfigs.reloadConfigs()) {
+      context
+          .getSource()
+          .sendFailure(Component.literal("Config file is invalid, please check the server log!"));
+      return 0;
+    }
+    sendFeedback(context, "Reloaded config file and reset cached rewards.");
+    return 0;
+  }
+
+  public int showJournalStatistics(CommandContext<CommandSourceStack> context) {
+    sendJournalStatistics(context, "Reward user data", RewardUserData.get());
+    sendJournalStatistics(context, "Special reward user data", SpecialRewardUserData.get());
+    return 0;
+  }
+
+  private void sendJournalStatistics(
+      CommandContext<CommandSourceStack> context, String name, RewardUserStorage storage) {
+    RewardUserJournal.Statistics statistics =
+        storage != null ? storage.getJournalStatistics() : null;
+    if (statistics == null) {
+      sendFeedback(context, name + " journal is disabled.");
+      return;
+    }
     sendFeedback(
         context,
-        """
-        Reset caching after reload config ...
-        If your changes are not visible, please try to save the file 2-3 times again to trigger the automatic reload!
-        If this is still not working, please restart the game / server instead.""");
-    ModConfigs.registerConfigs();
-    return 0;
+        String.format(
+            "%s journal: %d batches with %d entries (avg. %d, max. %d per batch), "
+                + "flush avg. %d micros / max. %d micros, commit latency avg. %d micros",
+            name,
+            statistics.batches(),
+            statistics.entries(),
+            statistics.averageBatchSize(),
+            statistics.maxBatchSize(),
+            statistics.averageFlushMicros(),
+            statistics.maxFlushMicros(),
+            statistics.averageCommitLatencyMicros()));
   }
 
   public int resetConfig(CommandContext<CommandSourceStack> context) {
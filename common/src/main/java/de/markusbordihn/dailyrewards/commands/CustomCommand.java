@@ -19,11 +19,24 @@
 
 package de.markusbordihn.dailyrewards.commands;
 
+import com.mojang.authlib.GameProfile;
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.context.CommandContext;
 import de.markusbordihn.dailyrewards.Constants;
+import de.markusbordihn.dailyrewards.data.RewardUserMonth;
+import de.markusbordihn.dailyrewards.data.RewardUserStorage;
+import de.markusbordihn.dailyrewards.rewards.Rewards;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.network.chat.Style;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.item.ItemStack;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -37,4 +50,88 @@ public abstract class CustomCommand implements Command<CommandSourceStack> {
     CommandSourceStack commandSource = context.getSource();
     commandSource.sendSuccess(() -> Component.literal(feedback), false);
   }
+
+  /** Sends the names of the players from a reward user index query, once it is completed. */
+  protected static int sendPlayerQueryResult(
+      CommandSourceStack context, String title, CompletableFuture<List<UUID>> playerQuery) {
+    if (playerQuery == null) {
+      context.sendFailure(
+          Component.literal("Reward user index is disabled, see userDataIndex in the config."));
+      return 0;
+    }
+    MinecraftServer server = context.getServer();
+    playerQuery.thenAccept(
+        uuids ->
+            server.execute(
+                () -> {
+                  StringBuilder playerNames = new StringBuilder();
+                  for (UUID uuid : uuids) {
+                    if (!playerNames.isEmpty()) {
+                      playerNames.append(", ");
+                    }
+                    playerNames.append(
+                        server.getProfileCache() != null
+                            ? server
+                                .getProfileCache()
+                                .get(uuid)
+                                .map(GameProfile::getName)
+                                .orElse(uuid.toString())
+                            : uuid.toString());
+                  }
+                  context.sendSuccess(
+                      () -> Component.literal(title + " (" + uuids.size() + "): " + playerNames),
+                      false);
+                }));
+    return 0;
+  }
+
+  /**
+   * Lists the rewards of the player for the given month from the reward user storage. Offline
+   * players and archived months are supported, because only the stored data are used.
+   */
+  protected static int listRewardMonthForPlayer(
+      CommandSourceStack context,
+      RewardUserStorage rewardUserStorage,
+      String title,
+      GameProfile gameProfile,
+      int year,
+      int month) {
+    RewardUserMonth rewardMonth =
+        rewardUserStorage.getRewardMonthOrArchived(year, month, gameProfile.getId());
+    if (rewardMonth == null) {
+      context.sendFailure(
+          Component.literal(
+                  "No " + title.toLowerCase(Locale.ROOT) + " for " + gameProfile.getName())
+              .append(" in " + year + "-" + month + " found!"));
+      return 0;
+    }
+
+    // Display basic reward information
+    MutableComponent textComponent =
+        Component.literal(title + " for " + gameProfile.getName())
+            .append(" in " + year + "-" + month + " (")
+            .append(rewardMonth.getRewardedDays() + " days")
+            .append(" / ")
+            .append(Rewards.getYearMonthDay(rewardMonth.getLastRewardedDay()))
+            .append(")");
+    context.sendSuccess(() -> textComponent, true);
+
+    // Display reward items
+    final MutableComponent rewardComponent = Component.literal("");
+    int rewardDay = 0;
+    for (ItemStack reward : rewardMonth.getRewardItems()) {
+      rewardComponent
+          .append(
+              Component.literal("[" + ++rewardDay + "] ")
+                  .withStyle(Style.EMPTY.withColor(ChatFormatting.GOLD)))
+          .append(
+              Component.literal("" + reward).withStyle(Style.EMPTY.withColor(ChatFormatting.GREEN)))
+          .append(
+              Component.literal(" (" + reward.getItem() + ")\n")
+                  .withStyle(Style.EMPTY.withColor(ChatFormatting.GRAY)));
+    }
+    context.sendSuccess(() -> rewardComponent, true);
+
+    return 0;
+  }
 }
@@ -19,18 +19,23 @@
 
 package de.markusbordihn.dailyrewards.commands;
 
+import com.mojang.authlib.GameProfile;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.builder.ArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
 import de.markusbordihn.dailyrewards.Constants;
 import de.markusbordihn.dailyrewards.data.RewardData;
 import de.markusbordihn.dailyrewards.data.RewardUserData;
 import de.markusbordihn.dailyrewards.rewards.Rewards;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.arguments.EntityArgument;
+import net.minecraft.commands.arguments.GameProfileArgument;
+import net.minecraft.commands.arguments.ResourceLocationArgument;
 import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
@@ -42,6 +47,9 @@ public class RewardCommand extends CustomCommand {
 
   private static final RewardCommand command = new RewardCommand();
   private static final String PLAYER_ARGUMENT = "player";
+  private static final String YEAR_ARGUMENT = "year";
+  private static final String MONTH_ARGUMENT = "month";
+  private static final String ITEM_ARGUMENT = "item";
 
   private static final MutableComponent claimCommand =
       Component.literal("/DailyRewards claim")
@@ -78,12 +86,27 @@ public class RewardCommand extends CustomCommand {
         .then(
             Commands.literal("list")
                 .then(
-                    Commands.argument(PLAYER_ARGUMENT, EntityArgument.player())
+                    Commands.argument(PLAYER_ARGUMENT, GameProfileArgument.gameProfile())
                         .executes(
                             context ->
-                                listRewardForPlayer(
+                                listRewardForPlayers(
                                     context.getSource(),
-                                    EntityArgument.getPlayer(context, PLAYER_ARGUMENT)))))
+                                    GameProfileArgument.getGameProfiles(context, PLAYER_ARGUMENT)))
+                        .then(
+                            Commands.argument(YEAR_ARGUMENT, IntegerArgumentType.integer(2000))
+                                .then(
+                                    Commands.argument(
+                                            MONTH_ARGUMENT, IntegerArgumentType.integer(1, 12))
+                                        .executes(
+                                            context ->
+                                                listRewardForPlayers(
+                                                    context.getSource(),
+                                                    GameProfileArgument.getGameProfiles(
+                                                        context, PLAYER_ARGUMENT),
+                                                    IntegerArgumentType.getInteger(
+                                                        context, YEAR_ARGUMENT),
+                                                    IntegerArgumentType.getInteger(
+                                                        context, MONTH_ARGUMENT)))))))
         .executes(command)
         .then(
             Commands.literal("remove")
@@ -95,6 +118,21 @@ public class RewardCommand extends CustomCommand {
                                     context.getSource(),
                                     EntityArgument.getPlayer(context, PLAYER_ARGUMENT)))))
         .executes(command)
+        .then(
+            Commands.literal("unclaimed")
+                .executes(context -> listPlayersWithUnclaimedRewards(context.getSource())))
+        .executes(command)
+        .then(
+            Commands.literal("find")
+                .then(
+                    Commands.argument(ITEM_ARGUMENT, ResourceLocationArgument.id())
+                        .executes(
+                            context ->
+                                listPlayersWithItem(
+                                    context.getSource(),
+                                    ResourceLocationArgument.getId(context, ITEM_ARGUMENT)
+                                        .toString()))))
+        .executes(command)
         .then(
             Commands.literal("clear")
                 .then(
@@ -112,7 +150,8 @@ public class RewardCommand extends CustomCommand {
     UUID playerUUID = player.getUUID();
     int daysCurrentMonth = Rewards.getDaysCurrentMonth();
     int rewardedDays = rewardUserData.getRewardedDaysForCurrentMonth(playerUUID);
-    String lastRewardedDay = rewardUserData.getLastRewardedDayForCurrentMonth(playerUUID);
+    String lastRewardedDay =
+        Rewards.getYearMonthDay(rewardUserData.getLastRewardedDayForCurrentMonth(playerUUID));
     List<ItemStack> rewards = rewardUserData.getRewardsForCurrentMonth(playerUUID);
 
     // Display basic reward information
@@ -163,6 +202,34 @@ public class RewardCommand extends CustomCommand {
     return 0;
   }
 
+  private static int listRewardForPlayers(
+      CommandSourceStack context, Collection<GameProfile> gameProfiles) {
+    for (GameProfile gameProfile : gameProfiles) {
+      ServerPlayer player = context.getServer().getPlayerList().getPlayer(gameProfile.getId());
+      if (player != null) {
+        listRewardForPlayer(context, player);
+      } else {
+        // Offline players are listed from the stored data, without preview of the next days.
+        listRewardMonthForPlayer(
+            context,
+            RewardUserData.get(),
+            "Rewards",
+            gameProfile,
+            Rewards.getCurrentYear(),
+            Rewards.getCurrentMonth());
+      }
+    }
+    return 0;
+  }
+
+  private static int listRewardForPlayers(
+      CommandSourceStack context, Collection<GameProfile> gameProfiles, int year, int month) {
+    for (GameProfile gameProfile : gameProfiles) {
+      listRewardMonthForPlayer(context, RewardUserData.get(), "Rewards", gameProfile, year, month);
+    }
+    return 0;
+  }
+
   private static int rewardPlayerToday(CommandSourceStack context, ServerPlayer player) {
     RewardUserData rewardUserData = RewardUserData.get();
     UUID playerUUID = player.getUUID();
@@ -184,7 +251,9 @@ public class RewardCommand extends CustomCommand {
 
     // Update stored reward data
     int rewardedDays = rewardUserData.increaseRewardedDaysForCurrentMonth(playerUUID);
-    ItemStack itemStack = RewardData.get().getRewardForCurrentMonth(rewardedDays);
+    ItemStack itemStack =
+        RewardData.get()
+            .getRewardForCurrentMonth(rewardedDays, playerUUID, player.getName().getString());
     if (itemStack.isEmpty()) {
       context.sendFailure(
           Component.translatable(
@@ -209,7 +278,9 @@ public class RewardCommand extends CustomCommand {
                 .append(" (")
                 .append("" + rewardedDays)
                 .append(" / ")
-                .append(rewardUserData.getLastRewardedDayForCurrentMonth(playerUUID))
+                .append(
+                    Rewards.getYearMonthDay(
+                        rewardUserData.getLastRewardedDayForCurrentMonth(playerUUID)))
                 .append(")"),
         true);
 
@@ -225,7 +296,9 @@ public class RewardCommand extends CustomCommand {
 
     // Update stored reward data
     int rewardedDays = rewardUserData.decreaseRewardedDaysForCurrentMonth(playerUUID);
-    ItemStack itemStack = RewardData.get().getRewardForCurrentMonth(rewardedDays);
+    ItemStack itemStack =
+        RewardData.get()
+            .getRewardForCurrentMonth(rewardedDays, playerUUID, player.getName().getString());
     if (itemStack.isEmpty()) {
       context.sendFailure(
           Component.translatable(
@@ -244,7 +317,9 @@ public class RewardCommand extends CustomCommand {
                 .append(" (")
                 .append("" + finalRewardedDays)
                 .append(" / ")
-                .append(rewardUserData.getLastRewardedDayForCurrentMonth(playerUUID))
+                .append(
+                    Rewards.getYearMonthDay(
+                        rewardUserData.getLastRewardedDayForCurrentMonth(playerUUID)))
                 .append(")"),
         true);
 
@@ -264,6 +339,24 @@ public class RewardCommand extends CustomCommand {
     return 0;
   }
 
+  private static int listPlayersWithUnclaimedRewards(CommandSourceStack context) {
+    return sendPlayerQueryResult(
+        context,
+        "Players with unclaimed rewards",
+        RewardUserData
+            .get()
+            .findPlayersWithUnclaimedRewards(Rewards.getCurrentYear(), Rewards.getCurrentMonth()));
+  }
+
+  private static int listPlayersWithItem(CommandSourceStack context, String itemId) {
+    return sendPlayerQueryResult(
+        context,
+        "Players rewarded with " + itemId,
+        RewardUserData
+            .get()
+            .findPlayersWithItem(Rewards.getCurrentYear(), Rewards.getCurrentMonth(), itemId));
+  }
+
   @Override
   public int run(CommandContext<CommandSourceStack> context) {
     return 0;
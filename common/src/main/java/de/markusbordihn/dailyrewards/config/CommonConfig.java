@@ -1,10 +1,17 @@
 package de.markusbordihn.dailyrewards.config;
 
+import de.markusbordihn.dailyrewards.Constants;
 import de.markusbordihn.dailyrewards.data.RewardScreenType;
+import de.markusbordihn.dailyrewards.data.UserDataStorageType;
 import java.util.List;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 public class CommonConfig extends Config {
 
+  private static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
   public boolean automaticRewardPlayers;
   public boolean automaticRewardSpecialPlayers;
   public int rewardTimePerDay;
@@ -16,6 +23,30 @@ public class CommonConfig extends Config {
   public boolean showRewardMenuOnPlayerJoin;
   public RewardScreenType rewardScreenType;
 
+  // Field defaults are used for options which are missing in older config files.
+  public UserDataStorageType userDataStorageType = UserDataStorageType.SINGLE_FILE;
+  public int userDataShards = 16;
+  public int automaticRewardTickBudgetPlayers = 0;
+  public int automaticRewardTickBudgetMicros = 0;
+  public int automaticRewardMaxDelayTicks = 20 * 60;
+  public boolean userDataArchiveClosedMonths = false;
+  public int userDataArchiveRetentionMonths = 0;
+  public boolean userDataLazyLoading = false;
+  public int userDataIdleUnloadTicks = 20 * 60 * 5;
+  public boolean userDataCompactItems = true;
+  public boolean userDataJournal = true;
+  public int userDataJournalSyncTicks = 20;
+  public int userDataJournalMaxBatchSize = 256;
+  public boolean userDataIndex = false;
+  public String userDataIndexJdbcUrl = "jdbc:sqlite:{data}/{id}_index.db";
+  public int userDataIndexSyncTicks = 20;
+  public boolean userDataSync = false;
+  public String userDataSyncDirectory = "";
+  public int userDataSyncTicks = 20;
+  public int rewardPlanPregenerationDays = 3;
+  public long rewardSeed = 0;
+  public boolean configAutoReload = true;
+
   public boolean useFillItems;
   public List<String> normalFillItems;
   public List<String> rareFillItems;
@@ -81,6 +112,292 @@ public class CommonConfig extends Config {
     return "common";
   }
 
+  /** Rejects the whole config, if any option is invalid, e.g. before it replaces a valid one. */
+  @Override
+  public void validate() {
+    check(null);
+  }
+
+  /**
+   * Replaces invalid options one by one with the nearest valid or the default value and logs them,
+   * so that a single invalid option doesn't discard the other options, e.g. on startup.
+   */
+  public void repair() {
+    CommonConfig defaults = new CommonConfig();
+    defaults.reset();
+    check(defaults);
+  }
+
+  /** Checks all options and throws for invalid ones or repairs them, if defaults are given. */
+  private void check(CommonConfig defaults) {
+    this.rewardTimePerDay = requireMinimum("rewardTimePerDay", this.rewardTimePerDay, 0, defaults);
+    this.userDataShards = requireMinimum("userDataShards", this.userDataShards, 1, defaults);
+    this.automaticRewardTickBudgetPlayers =
+        requireMinimum(
+            "automaticRewardTickBudgetPlayers", this.automaticRewardTickBudgetPlayers, 0, defaults);
+    this.automaticRewardTickBudgetMicros =
+        requireMinimum(
+            "automaticRewardTickBudgetMicros", this.automaticRewardTickBudgetMicros, 0, defaults);
+    this.automaticRewardMaxDelayTicks =
+        requireMinimum(
+            "automaticRewardMaxDelayTicks", this.automaticRewardMaxDelayTicks, 0, defaults);
+    this.userDataArchiveRetentionMonths =
+        requireMinimum(
+            "userDataArchiveRetentionMonths", this.userDataArchiveRetentionMonths, 0, defaults);
+    this.userDataIdleUnloadTicks =
+        requireMinimum("userDataIdleUnloadTicks", this.userDataIdleUnloadTicks, 0, defaults);
+    this.userDataJournalSyncTicks =
+        requireMinimum("userDataJournalSyncTicks", this.userDataJournalSyncTicks, 1, defaults);
+    this.userDataJournalMaxBatchSize =
+        requireMinimum(
+            "userDataJournalMaxBatchSize", this.userDataJournalMaxBatchSize, 1, defaults);
+    this.userDataIndexSyncTicks =
+        requireMinimum("userDataIndexSyncTicks", this.userDataIndexSyncTicks, 1, defaults);
+    this.userDataSyncTicks =
+        requireMinimum("userDataSyncTicks", this.userDataSyncTicks, 1, defaults);
+    this.rewardPlanPregenerationDays =
+        requireMinimum(
+            "rewardPlanPregenerationDays", this.rewardPlanPregenerationDays, 0, defaults);
+    this.rareFillItemsChance =
+        requireMinimum("rareFillItemsChance", this.rareFillItemsChance, 0, defaults);
+    this.lootBagFillItemsChance =
+        requireMinimum("lootBagFillItemsChance", this.lootBagFillItemsChance, 0, defaults);
+    this.rewardScreenType =
+        requirePresent(
+            "rewardScreenType", this.rewardScreenType, defaults, d -> d.rewardScreenType);
+    this.userDataStorageType =
+        requirePresent(
+            "userDataStorageType", this.userDataStorageType, defaults, d -> d.userDataStorageType);
+
+    // Item and user lists have no field defaults and are missing in incomplete config files.
+    this.normalFillItems =
+        requirePresent("normalFillItems", this.normalFillItems, defaults, d -> d.normalFillItems);
+    this.rareFillItems =
+        requirePresent("rareFillItems", this.rareFillItems, defaults, d -> d.rareFillItems);
+    this.lootBagFillItems =
+        requirePresent(
+            "lootBagFillItems", this.lootBagFillItems, defaults, d -> d.lootBagFillItems);
+    this.rewardsJanuaryItems =
+        requirePresent(
+            "rewardsJanuaryItems", this.rewardsJanuaryItems, defaults, d -> d.rewardsJanuaryItems);
+    this.rewardsJanuarySpecialItems =
+        requirePresent(
+            "rewardsJanuarySpecialItems",
+            this.rewardsJanuarySpecialItems,
+            defaults,
+            d -> d.rewardsJanuarySpecialItems);
+    this.rewardsJanuarySpecialUsers =
+        requirePresent(
+            "rewardsJanuarySpecialUsers",
+            this.rewardsJanuarySpecialUsers,
+            defaults,
+            d -> d.rewardsJanuarySpecialUsers);
+    this.rewardsFebruaryItems =
+        requirePresent(
+            "rewardsFebruaryItems",
+            this.rewardsFebruaryItems,
+            defaults,
+            d -> d.rewardsFebruaryItems);
+    this.rewardsFebruarySpecialItems =
+        requirePresent(
+            "rewardsFebruarySpecialItems",
+            this.rewardsFebruarySpecialItems,
+            defaults,
+            d -> d.rewardsFebruarySpecialItems);
+    this.rewardsFebruarySpecialUsers =
+        requirePresent(
+            "rewardsFebruarySpecialUsers",
+            this.rewardsFebruarySpecialUsers,
+            defaults,
+            d -> d.rewardsFebruarySpecialUsers);
+    this.rewardsMarchItems =
+        requirePresent(
+            "rewardsMarchItems", this.rewardsMarchItems, defaults, d -> d.rewardsMarchItems);
+    this.rewardsMarchSpecialItems =
+        requirePresent(
+            "rewardsMarchSpecialItems",
+            this.rewardsMarchSpecialItems,
+            defaults,
+            d -> d.rewardsMarchSpecialItems);
+    this.rewardsMarchSpecialUsers =
+        requirePresent(
+            "rewardsMarchSpecialUsers",
+            this.rewardsMarchSpecialUsers,
+            defaults,
+            d -> d.rewardsMarchSpecialUsers);
+    this.rewardsAprilItems =
+        requirePresent(
+            "rewardsAprilItems", this.rewardsAprilItems, defaults, d -> d.rewardsAprilItems);
+    this.rewardsAprilSpecialItems =
+        requirePresent(
+            "rewardsAprilSpecialItems",
+            this.rewardsAprilSpecialItems,
+            defaults,
+            d -> d.rewardsAprilSpecialItems);
+    this.rewardsAprilSpecialUsers =
+        requirePresent(
+            "rewardsAprilSpecialUsers",
+            this.rewardsAprilSpecialUsers,
+            defaults,
+            d -> d.rewardsAprilSpecialUsers);
+    this.rewardsMayItems =
+        requirePresent("rewardsMayItems", this.rewardsMayItems, defaults, d -> d.rewardsMayItems);
+    this.rewardsMaySpecialItems =
+        requirePresent(
+            "rewardsMaySpecialItems",
+            this.rewardsMaySpecialItems,
+            defaults,
+            d -> d.rewardsMaySpecialItems);
+    this.rewardsMaySpecialUsers =
+        requirePresent(
+            "rewardsMaySpecialUsers",
+            this.rewardsMaySpecialUsers,
+            defaults,
+            d -> d.rewardsMaySpecialUsers);
+    this.rewardsJuneItems =
+        requirePresent(
+            "rewardsJuneItems", this.rewardsJuneItems, defaults, d -> d.rewardsJuneItems);
+    this.rewardsJuneSpecialItems =
+        requirePresent(
+            "rewardsJuneSpecialItems",
+            this.rewardsJuneSpecialItems,
+            defaults,
+            d -> d.rewardsJuneSpecialItems);
+    this.rewardsJuneSpecialUsers =
+        requirePresent(
+            "rewardsJuneSpecialUsers",
+            this.rewardsJuneSpecialUsers,
+            defaults,
+            d -> d.rewardsJuneSpecialUsers);
+    this.rewardsJulyItems =
+        requirePresent(
+            "rewardsJulyItems", this.rewardsJulyItems, defaults, d -> d.rewardsJulyItems);
+    this.rewardsJulySpecialItems =
+        requirePresent(
+            "rewardsJulySpecialItems",
+            this.rewardsJulySpecialItems,
+            defaults,
+            d -> d.rewardsJulySpecialItems);
+    this.rewardsJulySpecialUsers =
+        requirePresent(
+            "rewardsJulySpecialUsers",
+            this.rewardsJulySpecialUsers,
+            defaults,
+            d -> d.rewardsJulySpecialUsers);
+    this.rewardsAugustItems =
+        requirePresent(
+            "rewardsAugustItems", this.rewardsAugustItems, defaults, d -> d.rewardsAugustItems);
+    this.rewardsAugustSpecialItems =
+        requirePresent(
+            "rewardsAugustSpecialItems",
+            this.rewardsAugustSpecialItems,
+            defaults,
+            d -> d.rewardsAugustSpecialItems);
+    this.rewardsAugustSpecialUsers =
+        requirePresent(
+            "rewardsAugustSpecialUsers",
+            this.rewardsAugustSpecialUsers,
+            defaults,
+            d -> d.rewardsAugustSpecialUsers);
+    this.rewardsSeptemberItems =
+        requirePresent(
+            "rewardsSeptemberItems",
+            this.rewardsSeptemberItems,
+            defaults,
+            d -> d.rewardsSeptemberItems);
+    this.rewardsSeptemberSpecialItems =
+        requirePresent(
+            "rewardsSeptemberSpecialItems",
+            this.rewardsSeptemberSpecialItems,
+            defaults,
+            d -> d.rewardsSeptemberSpecialItems);
+    this.rewardsSeptemberSpecialUsers =
+        requirePresent(
+            "rewardsSeptemberSpecialUsers",
+            this.rewardsSeptemberSpecialUsers,
+            defaults,
+            d -> d.rewardsSeptemberSpecialUsers);
+    this.rewardsOctoberItems =
+        requirePresent(
+            "rewardsOctoberItems", this.rewardsOctoberItems, defaults, d -> d.rewardsOctoberItems);
+    this.rewardsOctoberSpecialItems =
+        requirePresent(
+            "rewardsOctoberSpecialItems",
+            this.rewardsOctoberSpecialItems,
+            defaults,
+            d -> d.rewardsOctoberSpecialItems);
+    this.rewardsOctoberSpecialUsers =
+        requirePresent(
+            "rewardsOctoberSpecialUsers",
+            this.rewardsOctoberSpecialUsers,
+            defaults,
+            d -> d.rewardsOctoberSpecialUsers);
+    this.rewardsNovemberItems =
+        requirePresent(
+            "rewardsNovemberItems",
+            this.rewardsNovemberItems,
+            defaults,
+            d -> d.rewardsNovemberItems);
+    this.rewardsNovemberSpecialItems =
+        requirePresent(
+            "rewardsNovemberSpecialItems",
+            this.rewardsNovemberSpecialItems,
+            defaults,
+            d -> d.rewardsNovemberSpecialItems);
+    this.rewardsNovemberSpecialUsers =
+        requirePresent(
+            "rewardsNovemberSpecialUsers",
+            this.rewardsNovemberSpecialUsers,
+            defaults,
+            d -> d.rewardsNovemberSpecialUsers);
+    this.rewardsDecemberItems =
+        requirePresent(
+            "rewardsDecemberItems",
+            this.rewardsDecemberItems,
+            defaults,
+            d -> d.rewardsDecemberItems);
+    this.rewardsDecemberSpecialItems =
+        requirePresent(
+            "rewardsDecemberSpecialItems",
+            this.rewardsDecemberSpecialItems,
+            defaults,
+            d -> d.rewardsDecemberSpecialItems);
+    this.rewardsDecemberSpecialUsers =
+        requirePresent(
+            "rewardsDecemberSpecialUsers",
+            this.rewardsDecemberSpecialUsers,
+            defaults,
+            d -> d.rewardsDecemberSpecialUsers);
+  }
+
+  private static <T> T requirePresent(
+      String name, T value, CommonConfig defaults, Function<CommonConfig, T> defaultValue) {
+    if (value != null) {
+      return value;
+    }
+    if (defaults == null) {
+      throw new IllegalArgumentException(name + " is missing");
+    }
+    log.warn("{} config option {} is missing, using default value.", Constants.LOG_NAME, name);
+    return defaultValue.apply(defaults);
+  }
+
+  private static int requireMinimum(String name, int value, int minimum, CommonConfig defaults) {
+    if (value >= minimum) {
+      return value;
+    }
+    if (defaults == null) {
+      throw new IllegalArgumentException(name + " needs to be at least " + minimum);
+    }
+    log.warn(
+        "{} config option {} needs to be at least {}, using {}.",
+        Constants.LOG_NAME,
+        name,
+        minimum,
+        minimum);
+    return minimum;
+  }
+
   @Override
   protected void reset() {
     this.automaticRewardPlayers = true;
@@ -94,6 +411,29 @@ public class CommonConfig extends Config {
     this.showRewardMenuOnPlayerJoin = false;
     this.rewardScreenType = RewardScreenType.COMPACT;
 
+    this.userDataStorageType = UserDataStorageType.SINGLE_FILE;
+    this.userDataShards = 16;
+    this.automaticRewardTickBudgetPlayers = 0;
+    this.automaticRewardTickBudgetMicros = 0;
+    this.automaticRewardMaxDelayTicks = 20 * 60;
+    this.userDataArchiveClosedMonths = false;
+    this.userDataArchiveRetentionMonths = 0;
+    this.userDataLazyLoading = false;
+    this.userDataIdleUnloadTicks = 20 * 60 * 5;
+    this.userDataCompactItems = true;
+    this.userDataJournal = true;
+    this.userDataJournalSyncTicks = 20;
+    this.userDataJournalMaxBatchSize = 256;
+    this.userDataIndex = false;
+    this.userDataIndexJdbcUrl = "jdbc:sqlite:{data}/{id}_index.db";
+    this.userDataIndexSyncTicks = 20;
+    this.userDataSync = false;
+    this.userDataSyncDirectory = "";
+    this.userDataSyncTicks = 20;
+    this.rewardPlanPregenerationDays = 3;
+    this.rewardSeed = 0;
+    this.configAutoReload = true;
+
     this.useFillItems = true;
     this.normalFillItems =
         List.of(
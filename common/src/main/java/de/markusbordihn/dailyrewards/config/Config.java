@@ -2,6 +2,7 @@ package de.markusbordihn.dailyrewards.config;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import de.markusbordihn.dailyrewards.Constants;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -26,7 +27,10 @@ public abstract class Config {
 
   protected abstract void reset();
 
-  private File getConfigFile() {
+  /** Checks the parsed options and throws an IllegalArgumentException for invalid values. */
+  public void validate() {}
+
+  public File getConfigFile() {
     return new File(this.root + this.getPath() + this.extension);
   }
 
@@ -34,15 +38,25 @@ public abstract class Config {
     File dir = new File(this.root);
     if (!dir.exists() && !dir.mkdirs()) return;
     if (!this.getConfigFile().exists() && !this.getConfigFile().createNewFile()) return;
-    FileWriter writer = new FileWriter(this.getConfigFile());
-    GSON.toJson(this, writer);
-    writer.flush();
-    writer.close();
+    try (FileWriter writer = new FileWriter(this.getConfigFile())) {
+      GSON.toJson(this, writer);
+    }
+  }
+
+  /** Parses a new instance from the config file, without creating or changing the file. */
+  public <T extends Config> T parse() throws IOException {
+    try (FileReader reader = new FileReader(this.getConfigFile())) {
+      T config = GSON.fromJson(reader, (Type) this.getClass());
+      if (config == null) {
+        throw new JsonParseException("Config file is empty");
+      }
+      return config;
+    }
   }
 
   public <T extends Config> T read() {
-    try {
-      return GSON.fromJson(new FileReader(this.getConfigFile()), (Type) this.getClass());
+    try (FileReader reader = new FileReader(this.getConfigFile())) {
+      return GSON.fromJson(reader, (Type) this.getClass());
     } catch (FileNotFoundException ignored) {
       this.reset();
 
@@ -51,6 +65,8 @@ public abstract class Config {
       } catch (IOException e) {
         log.error("Failed to write default config file: {}", this.getConfigFile(), e);
       }
+    } catch (IOException e) {
+      log.error("Failed to read config file: {}", this.getConfigFile(), e);
     }
 
     return (T) this;
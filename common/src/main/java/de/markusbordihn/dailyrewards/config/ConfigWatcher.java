@@ -0,0 +1,119 @@
+package de.markusbordihn.dailyrewards.config;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.server.MinecraftServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reloads the common config after the config file was changed. Editors usually write a file in
+ * several steps, so the reload waits until the file was not changed for a short time. The config
+ * is parsed and validated by the watcher thread and only replaces the current config, if valid.
+ * The replacement is done by the server thread, so that a single tick never mixes two configs.
+ */
+public class ConfigWatcher {
+
+  private static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private static final long DEBOUNCE_MILLIS = 500;
+
+  private static ConfigWatcher watcher;
+
+  private final MinecraftServer server;
+  private final Path configFile;
+  private final WatchService watchService;
+  private final Thread thread;
+
+  private ConfigWatcher(MinecraftServer server, Path configFile) throws IOException {
+    this.server = server;
+    this.configFile = configFile;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    configFile
+        .getParent()
+        .register(
+            this.watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+    this.thread = new Thread(this::run, Constants.LOG_NAME + " Config Watcher");
+    this.thread.setDaemon(true);
+  }
+
+  public static synchronized void handleServerStartingEvent(MinecraftServer server) {
+    if (watcher != null || !ModConfigs.COMMON.configAutoReload) {
+      return;
+    }
+    Path configFile = ModConfigs.COMMON.getConfigFile().toPath().toAbsolutePath();
+    try {
+      watcher = new ConfigWatcher(server, configFile);
+      watcher.thread.start();
+    } catch (IOException e) {
+      log.error("{} unable to watch config file {}:", Constants.LOG_NAME, configFile, e);
+    }
+  }
+
+  public static synchronized void handleServerStoppedEvent(MinecraftServer server) {
+    if (watcher != null) {
+      watcher.close();
+      watcher = null;
+    }
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        WatchKey watchKey = this.watchService.take();
+        if (!pollConfigFileChanged(watchKey)) {
+          continue;
+        }
+
+        // Wait until all writes of the editor are done, before the file is parsed.
+        while ((watchKey = this.watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS))
+            != null) {
+          pollConfigFileChanged(watchKey);
+        }
+
+        // Auto reload could have been disabled with the last change of the config file.
+        if (ModConfigs.COMMON.configAutoReload) {
+          CommonConfig config = ModConfigs.parseConfig();
+          if (config != null) {
+            this.server.execute(() -> ModConfigs.applyConfig(config));
+          }
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Watcher was closed.
+    }
+  }
+
+  private boolean pollConfigFileChanged(WatchKey watchKey) {
+    boolean changed = false;
+    for (WatchEvent<?> event : watchKey.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || this.configFile.getFileName().equals(event.context())) {
+        changed = true;
+      }
+    }
+    if (!watchKey.reset()) {
+      log.warn("{} config directory is no longer watched!", Constants.LOG_NAME);
+    }
+    return changed;
+  }
+
+  private void close() {
+    this.thread.interrupt();
+    try {
+      this.watchService.close();
+    } catch (IOException e) {
+      log.error("{} unable to close config watcher:", Constants.LOG_NAME, e);
+    }
+  }
+}
@@ -1,10 +1,82 @@
 package de.markusbordihn.dailyrewards.config;
 
+import de.markusbordihn.dailyrewards.Constants;
+import java.io.IOException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 public class ModConfigs {
 
-  public static CommonConfig COMMON;
+  private static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  /** Current config, replaced as a whole on reload and never changed in place. */
+  public static volatile CommonConfig COMMON;
 
+  private static volatile int generation = 0;
+
+  /**
+   * Reads, repairs and publishes the config file. Invalid options are replaced one by one, so that
+   * the other options of the config file are kept.
+   */
   public static void registerConfigs() {
-    COMMON = new CommonConfig().read();
+    CommonConfig config = new CommonConfig().read();
+    if (config == null) {
+      log.error("{} config file is empty, using default config!", Constants.LOG_NAME);
+      config = new CommonConfig();
+      config.reset();
+    } else {
+      config.repair();
+    }
+    publish(config);
+  }
+
+  /**
+   * Parses and validates the config file and replaces the current config with it. Returns false and
+   * keeps the current config, if the config file could not be read or is invalid.
+   */
+  public static boolean reloadConfigs() {
+    CommonConfig config = parseConfig();
+    if (config == null) {
+      return false;
+    }
+    applyConfig(config);
+    return true;
+  }
+
+  /**
+   * Parses and validates the config file without replacing the current config, e.g. on a watcher
+   * thread. Returns null, if the config file could not be read or is invalid.
+   */
+  public static CommonConfig parseConfig() {
+    try {
+      CommonConfig config = new CommonConfig().parse();
+      config.validate();
+      return config;
+    } catch (IOException | RuntimeException e) {
+      log.error("{} unable to reload config file, keeping current config:", Constants.LOG_NAME, e);
+      return null;
+    }
+  }
+
+  /** Replaces the current config, only called by the server thread between two operations. */
+  public static void applyConfig(CommonConfig config) {
+    publish(config);
+    log.info("{} reloaded config file {}", Constants.LOG_NAME, config.getConfigFile());
+  }
+
+  /** Increased on every (re)load of the config, to invalidate caches based on the config. */
+  public static int getGeneration() {
+    return generation;
+  }
+
+  /** Invalidates the caches based on the config, e.g. after the reward pools were reloaded. */
+  public static synchronized void invalidateCaches() {
+    generation++;
+  }
+
+  private static synchronized void publish(CommonConfig config) {
+    // Caches compare the generation before they read the config, so it is increased after the swap.
+    COMMON = config;
+    generation++;
   }
 }
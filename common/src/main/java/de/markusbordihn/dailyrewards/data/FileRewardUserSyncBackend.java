@@ -0,0 +1,285 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link RewardUserSyncBackend} which stores one file per player in a directory, which is shared
+ * by all servers e.g. over a network file system. Writes are serialized by a file lock and are
+ * recorded in an append-only change log, which is polled by the servers for invalidation.
+ *
+ * <p>All file operations are executed by a single background thread, because the shared directory
+ * could be slow to access. This backend is meant for small networks and for testing, larger
+ * networks should use a database or key value store as backend.
+ */
+public class FileRewardUserSyncBackend implements RewardUserSyncBackend {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private static final String VERSION_TAG = "Version";
+  private static final String ENTRIES_TAG = "Entries";
+  private static final String RECORD_EXTENSION = ".dat";
+  private static final int CHANGE_SIZE = 24;
+  private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+  private final Path recordPath;
+  private final Path lockFile;
+  private final Path changeFile;
+  private final ExecutorService executor;
+  private long changePosition;
+
+  public FileRewardUserSyncBackend(Path directory, String fileId) throws IOException {
+    this.recordPath = directory.resolve(fileId);
+    this.lockFile = directory.resolve(fileId + ".lock");
+    this.changeFile = directory.resolve(fileId + ".changes");
+    Files.createDirectories(this.recordPath);
+
+    // Only changes after the start are relevant, older records are read on first access.
+    this.changePosition = Files.exists(this.changeFile) ? Files.size(this.changeFile) : 0;
+    this.executor =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, Constants.LOG_NAME + " " + fileId + " Sync");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @Override
+  public CompletableFuture<VersionedRecord> read(UUID uuid) {
+    return submit(() -> readRecord(uuid));
+  }
+
+  @Override
+  public CompletableFuture<Long> write(
+      UUID uuid, long expectedVersion, List<CompoundTag> rewardUserTags) {
+    return submit(
+        () -> {
+          try (FileChannel lockChannel = openLockChannel();
+              FileLock lock = lockChannel.lock()) {
+            VersionedRecord versionedRecord = readRecord(uuid);
+            long version = versionedRecord != null ? versionedRecord.version() : NO_VERSION;
+            if (version != expectedVersion) {
+              return NO_VERSION;
+            }
+            return writeRecord(uuid, version + 1, rewardUserTags);
+          }
+        });
+  }
+
+  @Override
+  public CompletableFuture<Void> removeMonth(int yearMonthKey) {
+    return rewriteRecords(
+        rewardUserTags -> {
+          List<CompoundTag> remainingRewardUserTags = new ArrayList<>(rewardUserTags.size());
+          for (CompoundTag rewardUserTag : rewardUserTags) {
+            if (RewardUserShard.getYearMonthKeyFromKeyId(
+                    rewardUserTag.getString(RewardUserShard.YEAR_MONTH_USER_TAG))
+                != yearMonthKey) {
+              remainingRewardUserTags.add(rewardUserTag);
+            }
+          }
+          return remainingRewardUserTags;
+        });
+  }
+
+  @Override
+  public CompletableFuture<Void> clear() {
+    return rewriteRecords(rewardUserTags -> List.of());
+  }
+
+  @Override
+  public CompletableFuture<List<Change>> pollChanges() {
+    return submit(this::readChanges);
+  }
+
+  @Override
+  public void close() {
+    this.executor.shutdown();
+    try {
+      if (!this.executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        log.error("{} unable to write pending shared reward user records!", Constants.LOG_NAME);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private <T> CompletableFuture<T> submit(Callable<T> operation) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return operation.call();
+          } catch (Exception e) {
+            throw new CompletionException(e);
+          }
+        },
+        this.executor);
+  }
+
+  private FileChannel openLockChannel() throws IOException {
+    return FileChannel.open(this.lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Rewrites all shared records with a new version, so that the other servers are invalidating
+   * their cached records. The versions are never reset, to keep compare-and-set writes safe.
+   */
+  private CompletableFuture<Void> rewriteRecords(UnaryOperator<List<CompoundTag>> rewrite) {
+    return submit(
+        () -> {
+          try (FileChannel lockChannel = openLockChannel();
+              FileLock lock = lockChannel.lock();
+              Stream<Path> files = Files.list(this.recordPath)) {
+            for (Path file : files.toList()) {
+              String fileName = file.getFileName().toString();
+              if (!fileName.endsWith(RECORD_EXTENSION)) {
+                continue;
+              }
+              UUID uuid =
+                  UUID.fromString(
+                      fileName.substring(0, fileName.length() - RECORD_EXTENSION.length()));
+              VersionedRecord versionedRecord = readRecord(uuid);
+              if (versionedRecord == null) {
+                continue;
+              }
+              List<CompoundTag> rewardUserTags = rewrite.apply(versionedRecord.rewardUserTags());
+              if (rewardUserTags.size() != versionedRecord.rewardUserTags().size()) {
+                writeRecord(uuid, versionedRecord.version() + 1, rewardUserTags);
+              }
+            }
+          }
+          return null;
+        });
+  }
+
+  private VersionedRecord readRecord(UUID uuid) throws IOException {
+    Path file = getRecordFile(uuid);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    CompoundTag compoundTag;
+    try (DataInputStream inputStream =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      compoundTag = NbtIo.read(inputStream);
+    }
+    ListTag entriesTag = compoundTag.getList(ENTRIES_TAG, 10);
+    List<CompoundTag> rewardUserTags = new ArrayList<>(entriesTag.size());
+    for (int i = 0; i < entriesTag.size(); ++i) {
+      rewardUserTags.add(entriesTag.getCompound(i));
+    }
+    return new VersionedRecord(compoundTag.getLong(VERSION_TAG), rewardUserTags);
+  }
+
+  /** Writes the record with the given version, the caller needs to hold the lock. */
+  private long writeRecord(UUID uuid, long version, List<CompoundTag> rewardUserTags)
+      throws IOException {
+    CompoundTag compoundTag = new CompoundTag();
+    compoundTag.putLong(VERSION_TAG, version);
+    ListTag entriesTag = new ListTag();
+    entriesTag.addAll(rewardUserTags);
+    compoundTag.put(ENTRIES_TAG, entriesTag);
+
+    // Replace the record atomically, so that readers without lock never see a partial file.
+    Path file = getRecordFile(uuid);
+    Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream outputStream =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+      NbtIo.write(compoundTag, outputStream);
+    }
+    Files.move(
+        temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    appendChange(uuid, version);
+    return version;
+  }
+
+  private List<Change> readChanges() throws IOException {
+    if (!Files.exists(this.changeFile)) {
+      return List.of();
+    }
+    List<Change> changes = new ArrayList<>();
+    try (FileChannel changeChannel = FileChannel.open(this.changeFile, StandardOpenOption.READ)) {
+      long size = changeChannel.size();
+      if (size < this.changePosition) {
+        log.warn("{} change log {} was truncated!", Constants.LOG_NAME, this.changeFile);
+        this.changePosition = 0;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(CHANGE_SIZE);
+      while (this.changePosition + CHANGE_SIZE <= size) {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          changeChannel.read(buffer, this.changePosition + buffer.position());
+        }
+        buffer.flip();
+        changes.add(new Change(new UUID(buffer.getLong(), buffer.getLong()), buffer.getLong()));
+        this.changePosition += CHANGE_SIZE;
+      }
+    }
+    return changes;
+  }
+
+  private void appendChange(UUID uuid, long version) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(CHANGE_SIZE);
+    buffer.putLong(uuid.getMostSignificantBits());
+    buffer.putLong(uuid.getLeastSignificantBits());
+    buffer.putLong(version);
+    buffer.flip();
+    try (FileChannel changeChannel =
+        FileChannel.open(
+            this.changeFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      while (buffer.hasRemaining()) {
+        changeChannel.write(buffer);
+      }
+    }
+  }
+
+  private Path getRecordFile(UUID uuid) {
+    return this.recordPath.resolve(uuid + RECORD_EXTENSION);
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link RewardUserIndex} for an embedded, file based SQL database like SQLite or H2. The JDBC
+ * driver is not shipped with the mod and needs to be available on the server class path.
+ *
+ * <p>All statements are executed by a single background thread, updates are written as prepared
+ * statement batches within one transaction.
+ */
+public class JdbcRewardUserIndex implements RewardUserIndex {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private static final long CLOSE_TIMEOUT_SECONDS = 30;
+  private static final String[] CREATE_STATEMENTS = {
+    "CREATE TABLE IF NOT EXISTS reward_user_month (uuid VARCHAR(36) NOT NULL,"
+        + " month_key INT NOT NULL, rewarded_days INT NOT NULL, rewarded_mask INT NOT NULL,"
+        + " claimed_mask INT NOT NULL, unclaimed INT NOT NULL, PRIMARY KEY (uuid, month_key))",
+    "CREATE INDEX IF NOT EXISTS reward_user_month_unclaimed"
+        + " ON reward_user_month (month_key, unclaimed)",
+    "CREATE TABLE IF NOT EXISTS reward_user_item (uuid VARCHAR(36) NOT NULL,"
+        + " month_key INT NOT NULL, reward_day INT NOT NULL, item_id VARCHAR(255) NOT NULL,"
+        + " item_count INT NOT NULL, claimed INT NOT NULL,"
+        + " PRIMARY KEY (uuid, month_key, reward_day))",
+    "CREATE INDEX IF NOT EXISTS reward_user_item_item_id"
+        + " ON reward_user_item (item_id, month_key)"
+  };
+
+  private final String jdbcUrl;
+  private final ExecutorService executor;
+  private Connection connection;
+
+  public JdbcRewardUserIndex(String jdbcUrl, String name) {
+    this.jdbcUrl = jdbcUrl;
+    this.executor =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, Constants.LOG_NAME + " " + name + " Index");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @Override
+  public boolean open() throws SQLException {
+    this.connection = DriverManager.getConnection(this.jdbcUrl);
+    boolean created;
+    try (ResultSet tables =
+        this.connection.getMetaData().getTables(null, null, "reward_user_month", null)) {
+      created = !tables.next();
+    }
+    try (Statement statement = this.connection.createStatement()) {
+      for (String createStatement : CREATE_STATEMENTS) {
+        statement.execute(createStatement);
+      }
+    }
+    this.connection.setAutoCommit(false);
+    return created;
+  }
+
+  @Override
+  public void update(Supplier<Map<UUID, List<MonthEntry>>> monthEntries) {
+    this.executor.execute(() -> writeMonthEntries(monthEntries.get()));
+  }
+
+  @Override
+  public void removeMonth(UUID uuid, int yearMonthKey) {
+    this.executor.execute(
+        () -> {
+          String condition =
+              uuid != null ? " WHERE month_key = ? AND uuid = ?" : " WHERE month_key = ?";
+          try (PreparedStatement deleteItems =
+                  this.connection.prepareStatement("DELETE FROM reward_user_item" + condition);
+              PreparedStatement deleteMonth =
+                  this.connection.prepareStatement("DELETE FROM reward_user_month" + condition)) {
+            for (PreparedStatement statement : List.of(deleteItems, deleteMonth)) {
+              statement.setInt(1, yearMonthKey);
+              if (uuid != null) {
+                statement.setString(2, uuid.toString());
+              }
+              statement.executeUpdate();
+            }
+            this.connection.commit();
+          } catch (SQLException e) {
+            rollback(e);
+          }
+        });
+  }
+
+  @Override
+  public void clear() {
+    this.executor.execute(
+        () -> {
+          try (Statement statement = this.connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM reward_user_item");
+            statement.executeUpdate("DELETE FROM reward_user_month");
+            this.connection.commit();
+          } catch (SQLException e) {
+            rollback(e);
+          }
+        });
+  }
+
+  @Override
+  public CompletableFuture<List<UUID>> findPlayersWithUnclaimedRewards(int yearMonthKey) {
+    return query(
+        "SELECT uuid FROM reward_user_month WHERE month_key = ? AND unclaimed = 1",
+        yearMonthKey,
+        null);
+  }
+
+  @Override
+  public CompletableFuture<List<UUID>> findPlayersWithItem(int yearMonthKey, String itemId) {
+    return query(
+        "SELECT DISTINCT uuid FROM reward_user_item WHERE item_id = ? AND month_key = ?",
+        yearMonthKey,
+        itemId);
+  }
+
+  @Override
+  public void close() {
+    this.executor.shutdown();
+    try {
+      if (!this.executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        log.error("{} unable to write pending reward user index updates!", Constants.LOG_NAME);
+      }
+      if (this.connection != null) {
+        this.connection.close();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (SQLException e) {
+      log.error("{} unable to close reward user index:", Constants.LOG_NAME, e);
+    }
+  }
+
+  private CompletableFuture<List<UUID>> query(String sql, int yearMonthKey, String itemId) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          List<UUID> uuids = new ArrayList<>();
+          try (PreparedStatement statement = this.connection.prepareStatement(sql)) {
+            if (itemId != null) {
+              statement.setString(1, itemId);
+              statement.setInt(2, yearMonthKey);
+            } else {
+              statement.setInt(1, yearMonthKey);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+              while (resultSet.next()) {
+                uuids.add(UUID.fromString(resultSet.getString(1)));
+              }
+            }
+            this.connection.commit();
+          } catch (SQLException e) {
+            rollback(e);
+          }
+          return uuids;
+        },
+        this.executor);
+  }
+
+  private void writeMonthEntries(Map<UUID, List<MonthEntry>> monthEntries) {
+    try (PreparedStatement deleteItems =
+            this.connection.prepareStatement(
+                "DELETE FROM reward_user_item WHERE uuid = ? AND month_key = ?");
+        PreparedStatement deleteMonth =
+            this.connection.prepareStatement(
+                "DELETE FROM reward_user_month WHERE uuid = ? AND month_key = ?");
+        PreparedStatement insertMonth =
+            this.connection.prepareStatement(
+                "INSERT INTO reward_user_month (uuid, month_key, rewarded_days, rewarded_mask,"
+                    + " claimed_mask, unclaimed) VALUES (?, ?, ?, ?, ?, ?)");
+        PreparedStatement insertItem =
+            this.connection.prepareStatement(
+                "INSERT INTO reward_user_item (uuid, month_key, reward_day, item_id, item_count,"
+                    + " claimed) VALUES (?, ?, ?, ?, ?, ?)")) {
+      for (Map.Entry<UUID, List<MonthEntry>> entry : monthEntries.entrySet()) {
+        String uuid = entry.getKey().toString();
+        for (MonthEntry monthEntry : entry.getValue()) {
+          for (PreparedStatement statement : List.of(deleteItems, deleteMonth)) {
+            statement.setString(1, uuid);
+            statement.setInt(2, monthEntry.yearMonthKey());
+            statement.addBatch();
+          }
+          insertMonth.setString(1, uuid);
+          insertMonth.setInt(2, monthEntry.yearMonthKey());
+          insertMonth.setInt(3, monthEntry.rewardedDays());
+          insertMonth.setInt(4, monthEntry.rewardedMask());
+          insertMonth.setInt(5, monthEntry.claimedMask());
+          insertMonth.setInt(
+              6, (monthEntry.rewardedMask() & ~monthEntry.claimedMask()) != 0 ? 1 : 0);
+          insertMonth.addBatch();
+          for (int day = 0; day < monthEntry.itemIds().size(); day++) {
+            insertItem.setString(1, uuid);
+            insertItem.setInt(2, monthEntry.yearMonthKey());
+            insertItem.setInt(3, day + 1);
+            insertItem.setString(4, monthEntry.itemIds().get(day));
+            insertItem.setInt(5, monthEntry.itemCounts().get(day));
+            insertItem.setInt(
+                6, day < Integer.SIZE && (monthEntry.claimedMask() & (1 << day)) != 0 ? 1 : 0);
+            insertItem.addBatch();
+          }
+        }
+      }
+      deleteItems.executeBatch();
+      deleteMonth.executeBatch();
+      insertMonth.executeBatch();
+      insertItem.executeBatch();
+      this.connection.commit();
+    } catch (SQLException e) {
+      rollback(e);
+    }
+  }
+
+  private void rollback(SQLException exception) {
+    log.error("{} unable to access reward user index:", Constants.LOG_NAME, exception);
+    try {
+      this.connection.rollback();
+    } catch (SQLException e) {
+      log.error("{} unable to rollback reward user index:", Constants.LOG_NAME, e);
+    }
+  }
+}
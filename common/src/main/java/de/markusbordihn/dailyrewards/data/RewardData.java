@@ -19,14 +19,27 @@
 
 package de.markusbordihn.dailyrewards.data;
 
+import static de.markusbordihn.dailyrewards.config.ModConfigs.COMMON;
+
 import de.markusbordihn.dailyrewards.Constants;
+import de.markusbordihn.dailyrewards.rewards.RewardDate;
+import de.markusbordihn.dailyrewards.rewards.RewardItemPool;
+import de.markusbordihn.dailyrewards.rewards.RewardPlanGenerator;
+import de.markusbordihn.dailyrewards.rewards.RewardPools;
+import de.markusbordihn.dailyrewards.rewards.RewardRandom;
 import de.markusbordihn.dailyrewards.rewards.Rewards;
 import de.markusbordihn.dailyrewards.rewards.SpecialRewards;
 import dev.architectury.utils.GameInstance;
+import java.io.File;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.server.MinecraftServer;
@@ -46,14 +59,26 @@ public class RewardData extends SavedData {
   public static final String ITEM_LIST_TAG = "ItemList";
   public static final String REWARDS_TAG = "Rewards";
   public static final String YEAR_MONTH_TAG = "YearMonth";
+  public static final String PLAN_VERSION_TAG = "PlanVersion";
+  public static final String PLAN_SEED_TAG = "PlanSeed";
+  public static final String REPLACED_REWARDS_TAG = "ReplacedRewards";
+  public static final String REPLACED_SPECIAL_REWARDS_TAG = "ReplacedSpecialRewards";
 
   private static final String FILE_ID = Constants.MOD_ID;
   private static final ConcurrentHashMap<String, List<ItemStack>> rewardItemsMap =
       new ConcurrentHashMap<>();
   private static final ConcurrentHashMap<String, List<ItemStack>> specialRewardItemsMap =
       new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Integer> planVersionMap =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Long> planSeedMap = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Map<Integer, List<ItemStack>>>
+      replacedRewardItemsMap = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Map<Integer, List<ItemStack>>>
+      replacedSpecialRewardItemsMap = new ConcurrentHashMap<>();
   private static MinecraftServer server;
   private static RewardData data;
+  private volatile boolean snapshotFailed = false;
 
   public RewardData() {
     this.setDirty();
@@ -75,6 +100,7 @@ public class RewardData extends SavedData {
           serverLevel
               .getDataStorage()
               .computeIfAbsent(RewardData::load, RewardData::new, RewardData.getFileId());
+      RewardData.data.scheduleRewardPlans(Rewards.getCurrentDate());
     } else {
       log.error(
           "{} unable to get server level {} for storing data!", Constants.LOG_NAME, serverLevel);
@@ -97,6 +123,40 @@ public class RewardData extends SavedData {
     return FILE_ID;
   }
 
+  public static void handleDayChangeEvent(RewardDate rewardDate) {
+    if (RewardData.data != null) {
+      RewardData.data.scheduleRewardPlans(rewardDate);
+    }
+  }
+
+  public static void handleMonthChangeEvent(RewardDate rewardDate) {
+    if (RewardData.data == null) {
+      return;
+    }
+
+    // Regenerate pre-generated rewards, if the config was changed after they were generated.
+    Integer planVersion = planVersionMap.get(getKeyId(rewardDate.year(), rewardDate.month()));
+    if (planVersion != null
+        && planVersion != RewardPlanGenerator.getPlanVersion(rewardDate.month())) {
+      log.info(
+          "{} Rewards for {}-{} are outdated, regenerating them ...",
+          Constants.LOG_NAME,
+          rewardDate.year(),
+          rewardDate.month());
+      RewardData.data.publishRewardPlan(
+          RewardPlanGenerator.generate(rewardDate.year(), rewardDate.month()), true);
+    }
+
+    // Prepare the rewards for the new month, before the first player is asking for them.
+    log.info(
+        "{} Preparing rewards for {}-{} ...",
+        Constants.LOG_NAME,
+        rewardDate.year(),
+        rewardDate.month());
+    RewardData.data.getRewardsFor(rewardDate.year(), rewardDate.month());
+    RewardData.data.getSpecialRewardsFor(rewardDate.year(), rewardDate.month());
+  }
+
   public static String getKeyId(int year, int month) {
     return year + "-" + month;
   }
@@ -131,7 +191,7 @@ public class RewardData extends SavedData {
 
   public static RewardData load(CompoundTag compoundTag) {
     RewardData rewardData = new RewardData();
-    log.info("{} loading reward data ... {}", Constants.LOG_NAME, compoundTag);
+    log.info("{} loading reward data ...", Constants.LOG_NAME);
 
     // Restoring rewards items per year-month
     if (compoundTag.contains(REWARDS_TAG)) {
@@ -143,9 +203,15 @@ public class RewardData extends SavedData {
         String yearMonthKey = rewardTag.getString(YEAR_MONTH_TAG);
         for (int i2 = 0; i2 < itemListTag.size(); ++i2) {
           ItemStack itemStack = ItemStack.of(itemListTag.getCompound(i2));
-          rewardItems.add(itemStack);
+          rewardItems.add(RewardItemPool.intern(itemStack));
         }
         rewardItemsMap.put(yearMonthKey, rewardItems);
+        if (rewardTag.contains(PLAN_VERSION_TAG)) {
+          planVersionMap.put(yearMonthKey, rewardTag.getInt(PLAN_VERSION_TAG));
+        }
+        if (rewardTag.contains(PLAN_SEED_TAG)) {
+          planSeedMap.put(yearMonthKey, rewardTag.getLong(PLAN_SEED_TAG));
+        }
       }
     }
     if (rewardItemsMap.isEmpty()) {
@@ -153,7 +219,10 @@ public class RewardData extends SavedData {
           "{} No stored rewards data found! This could be ignored on the first start.",
           Constants.LOG_NAME);
     } else {
-      log.debug("{} Loaded stored rewards data from disk: {}", Constants.LOG_NAME, rewardItemsMap);
+      log.debug(
+          "{} Loaded stored rewards data for {} months from disk.",
+          Constants.LOG_NAME,
+          rewardItemsMap.size());
     }
 
     // Restoring special rewards items per year-month
@@ -166,28 +235,170 @@ public class RewardData extends SavedData {
         String yearMonthKey = rewardTag.getString(YEAR_MONTH_TAG);
         for (int i2 = 0; i2 < itemListTag.size(); ++i2) {
           ItemStack itemStack = ItemStack.of(itemListTag.getCompound(i2));
-          rewardItems.add(itemStack);
+          rewardItems.add(RewardItemPool.intern(itemStack));
         }
         specialRewardItemsMap.put(yearMonthKey, rewardItems);
       }
     }
     if (!specialRewardItemsMap.isEmpty()) {
       log.debug(
-          "{} Loaded stored special rewards data from disk: {}",
+          "{} Loaded stored special rewards data for {} months from disk.",
           Constants.LOG_NAME,
-          specialRewardItemsMap);
+          specialRewardItemsMap.size());
     }
 
+    // Restoring replaced rewards items, which are still referenced by reward user records.
+    loadReplacedRewards(compoundTag.getList(REPLACED_REWARDS_TAG, 10), replacedRewardItemsMap);
+    loadReplacedRewards(
+        compoundTag.getList(REPLACED_SPECIAL_REWARDS_TAG, 10), replacedSpecialRewardItemsMap);
+
     return rewardData;
   }
 
+  private static void loadReplacedRewards(
+      ListTag listTag, Map<String, Map<Integer, List<ItemStack>>> replacedRewardsMap) {
+    for (int i = 0; i < listTag.size(); ++i) {
+      CompoundTag rewardTag = listTag.getCompound(i);
+      List<ItemStack> rewardItems = new ArrayList<>();
+      ListTag itemListTag = rewardTag.getList(ITEMS_TAG, 10);
+      for (int i2 = 0; i2 < itemListTag.size(); ++i2) {
+        rewardItems.add(RewardItemPool.intern(ItemStack.of(itemListTag.getCompound(i2))));
+      }
+      retainReplacedRewards(rewardTag.getString(YEAR_MONTH_TAG), rewardItems, replacedRewardsMap);
+    }
+  }
+
+  /**
+   * Keeps a copy of the month rewards before they are replaced, because reward user records are
+   * only storing references to them. The copy is found by the reference hash of the records.
+   */
+  private static void retainReplacedRewards(
+      String key,
+      List<ItemStack> rewardItems,
+      Map<String, Map<Integer, List<ItemStack>>> replacedRewardsMap) {
+    if (rewardItems == null || rewardItems.isEmpty()) {
+      return;
+    }
+    replacedRewardsMap
+        .computeIfAbsent(key, id -> new ConcurrentHashMap<>())
+        .putIfAbsent(
+            RewardUserItemCodec.getReferenceHash(rewardItems), List.copyOf(rewardItems));
+  }
+
+  /** Returns the replaced rewards for the month with the reference hash or null. */
+  public static List<ItemStack> getReplacedRewardsFor(int year, int month, int referenceHash) {
+    Map<Integer, List<ItemStack>> replacedRewards =
+        replacedRewardItemsMap.get(getKeyId(year, month));
+    return replacedRewards != null ? replacedRewards.get(referenceHash) : null;
+  }
+
+  public static List<ItemStack> getReplacedSpecialRewardsFor(
+      int year, int month, int referenceHash) {
+    Map<Integer, List<ItemStack>> replacedRewards =
+        replacedSpecialRewardItemsMap.get(getKeyId(year, month));
+    return replacedRewards != null ? replacedRewards.get(referenceHash) : null;
+  }
+
+  /** Drops the replaced rewards of the matching months, which are no longer referenced. */
+  public void removeReplacedRewards(IntPredicate yearMonthKeys) {
+    removeReplacedRewards(yearMonthKeys, replacedRewardItemsMap);
+  }
+
+  public void removeReplacedSpecialRewards(IntPredicate yearMonthKeys) {
+    removeReplacedRewards(yearMonthKeys, replacedSpecialRewardItemsMap);
+  }
+
+  private void removeReplacedRewards(
+      IntPredicate yearMonthKeys, Map<String, Map<Integer, List<ItemStack>>> replacedRewardsMap) {
+    if (replacedRewardsMap
+        .keySet()
+        .removeIf(key -> yearMonthKeys.test(getYearMonthKeyFromKeyId(key)))) {
+      this.setDirty();
+    }
+  }
+
+  private static int getYearMonthKeyFromKeyId(String key) {
+    String[] yearMonth = key.split("-");
+    return RewardUserRecord.getYearMonthKey(
+        Integer.parseInt(yearMonth[0]), Integer.parseInt(yearMonth[1]));
+  }
+
   public List<ItemStack> getRewardsFor(int year, int month) {
     String key = getKeyId(year, month);
     List<ItemStack> rewards = rewardItemsMap.get(key);
     if (rewards != null && rewards.isEmpty()) {
       rewardItemsMap.remove(key);
     }
-    return rewardItemsMap.computeIfAbsent(key, id -> Rewards.calculateRewardItemsForMonth(month));
+    return rewardItemsMap.computeIfAbsent(
+        key,
+        id -> {
+          planVersionMap.put(id, RewardPlanGenerator.getPlanVersion(month));
+          planSeedMap.put(id, RewardRandom.getSeed(year, month));
+          return Rewards.calculateRewardItemsForMonth(year, month);
+        });
+  }
+
+  /** Pre-generates the rewards of the next month, within the last days of the current month. */
+  public void scheduleRewardPlans(RewardDate rewardDate) {
+    if (COMMON.rewardPlanPregenerationDays <= 0
+        || rewardDate.daysInMonth() - rewardDate.day() > COMMON.rewardPlanPregenerationDays) {
+      return;
+    }
+    YearMonth nextMonth = YearMonth.of(rewardDate.year(), rewardDate.month()).plusMonths(1);
+    if (hasCurrentRewardPlan(nextMonth.getYear(), nextMonth.getMonthValue())) {
+      return;
+    }
+    RewardPlanGenerator.schedule(
+        server,
+        nextMonth.getYear(),
+        nextMonth.getMonthValue(),
+        rewardPlan -> publishRewardPlan(rewardPlan, false));
+  }
+
+  private static boolean hasCurrentRewardPlan(int year, int month) {
+    String key = getKeyId(year, month);
+    List<ItemStack> rewards = rewardItemsMap.get(key);
+    Integer planVersion = planVersionMap.get(key);
+    return rewards != null
+        && !rewards.isEmpty()
+        && planVersion != null
+        && planVersion == RewardPlanGenerator.getPlanVersion(month);
+  }
+
+  /**
+   * Publishes the generated rewards of the month. Rewards of an already started month are only
+   * replaced on request, because the players could already have received some of them.
+   */
+  private void publishRewardPlan(RewardPlanGenerator.RewardPlan rewardPlan, boolean replace) {
+    String key = getKeyId(rewardPlan.year(), rewardPlan.month());
+    List<ItemStack> rewards = rewardItemsMap.get(key);
+    if (!replace
+        && rewards != null
+        && !rewards.isEmpty()
+        && RewardUserRecord.getYearMonthKey(rewardPlan.year(), rewardPlan.month())
+            <= Rewards.getCurrentDate().yearMonthKey()) {
+      log.warn(
+          "{} Ignoring pre-generated rewards for already started month {} ...",
+          Constants.LOG_NAME,
+          key);
+      return;
+    }
+    retainReplacedRewards(key, rewards, replacedRewardItemsMap);
+    retainReplacedRewards(key, specialRewardItemsMap.get(key), replacedSpecialRewardItemsMap);
+    specialRewardItemsMap.put(key, rewardPlan.specialRewardItems());
+    rewardItemsMap.put(key, rewardPlan.rewardItems());
+    planVersionMap.put(key, rewardPlan.version());
+    planSeedMap.put(key, rewardPlan.seed());
+    this.setDirty();
+  }
+
+  /** Returns the stored rewards for the month or null, without calculating missing rewards. */
+  public static List<ItemStack> getStoredRewardsFor(int year, int month) {
+    return rewardItemsMap.get(getKeyId(year, month));
+  }
+
+  public static List<ItemStack> getStoredSpecialRewardsFor(int year, int month) {
+    return specialRewardItemsMap.get(getKeyId(year, month));
   }
 
   public List<ItemStack> getRewardsForMonth(int month) {
@@ -202,7 +413,7 @@ public class RewardData extends SavedData {
     List<ItemStack> rewardItems = getRewardsForCurrentMonth();
     List<ItemStack> rewardItemsForNextDays = new ArrayList<>();
     for (int i = rewardedDay; i < rewardedDay + nextDays && i < rewardItems.size(); i++) {
-      rewardItemsForNextDays.add(rewardItems.get(i));
+      rewardItemsForNextDays.add(rewardItems.get(i).copy());
     }
     return rewardItemsForNextDays;
   }
@@ -220,6 +431,7 @@ public class RewardData extends SavedData {
     return syncData;
   }
 
+  /** Returns a copy of the reward, because the stored rewards are shared item templates. */
   public ItemStack getRewardForCurrentMonth(int day) {
     List<ItemStack> rewards = getRewardsForCurrentMonth();
     int rewardIndex = --day;
@@ -229,6 +441,20 @@ public class RewardData extends SavedData {
     return ItemStack.EMPTY;
   }
 
+  /**
+   * Returns a copy of the reward for the player, the user pool of the player is overriding the
+   * month reward for the same day.
+   */
+  public ItemStack getRewardForCurrentMonth(int day, UUID uuid, String playerName) {
+    List<ItemStack> userRewards =
+        RewardPools.get().getUserItems(Rewards.getCurrentMonth(), uuid, playerName);
+    int rewardIndex = day - 1;
+    if (userRewards != null && rewardIndex >= 0 && userRewards.size() > rewardIndex) {
+      return userRewards.get(rewardIndex).copy();
+    }
+    return getRewardForCurrentMonth(day);
+  }
+
   public List<ItemStack> getSpecialRewardsFor(int year, int month) {
     String key = getKeyId(year, month);
     List<ItemStack> specialRewards = specialRewardItemsMap.get(key);
@@ -236,7 +462,7 @@ public class RewardData extends SavedData {
       specialRewardItemsMap.remove(key);
     }
     return specialRewardItemsMap.computeIfAbsent(
-        key, id -> SpecialRewards.calculateSpecialRewardItemsForMonth(month));
+        key, id -> SpecialRewards.calculateSpecialRewardItemsForMonth(year, month));
   }
 
   public List<ItemStack> getSpecialRewardsForMonth(int month) {
@@ -260,6 +486,7 @@ public class RewardData extends SavedData {
     return syncData;
   }
 
+  /** Returns a copy of the special reward, because the stored rewards are shared item templates. */
   public ItemStack getSpecialRewardForCurrentMonth(int day) {
     List<ItemStack> rewards = getSpecialRewardsForCurrentMonth();
     int rewardIndex = --day;
@@ -273,15 +500,19 @@ public class RewardData extends SavedData {
     List<ItemStack> rewardItems = getSpecialRewardsForCurrentMonth();
     List<ItemStack> rewardItemsForNextDays = new ArrayList<>();
     for (int i = rewardedDay; i < rewardedDay + nextDays && i < rewardItems.size(); i++) {
-      rewardItemsForNextDays.add(rewardItems.get(i));
+      rewardItemsForNextDays.add(rewardItems.get(i).copy());
     }
     return rewardItemsForNextDays;
   }
 
   public void resetRewardDataFor(int year, int month) {
     log.debug("{} Resetting reward data for {}-{} ...", Constants.LOG_NAME, year, month);
-    rewardItemsMap.get(getKeyId(year, month)).clear();
-    specialRewardItemsMap.get(getKeyId(year, month)).clear();
+    String key = getKeyId(year, month);
+    retainReplacedRewards(key, rewardItemsMap.remove(key), replacedRewardItemsMap);
+    retainReplacedRewards(key, specialRewardItemsMap.remove(key), replacedSpecialRewardItemsMap);
+    planVersionMap.remove(key);
+    planSeedMap.remove(key);
+    this.setDirty();
   }
 
   public void resetRewardDataForCurrentMonth() {
@@ -290,30 +521,70 @@ public class RewardData extends SavedData {
 
   public void clearRewardData() {
     log.debug("{} Clearing reward data ...", Constants.LOG_NAME);
+    rewardItemsMap.forEach(
+        (key, rewardItems) -> retainReplacedRewards(key, rewardItems, replacedRewardItemsMap));
+    specialRewardItemsMap.forEach(
+        (key, rewardItems) ->
+            retainReplacedRewards(key, rewardItems, replacedSpecialRewardItemsMap));
     rewardItemsMap.clear();
     specialRewardItemsMap.clear();
+    planVersionMap.clear();
+    planSeedMap.clear();
     this.setDirty();
   }
 
+  /** Failed snapshots are written again with the next save. */
+  @Override
+  public boolean isDirty() {
+    return super.isDirty() || this.snapshotFailed;
+  }
+
+  @Override
+  public void save(File file) {
+    if (this.isDirty()) {
+      // Only the month lists are copied here, the items are serialized on the writer thread.
+      this.snapshotFailed = false;
+      Snapshot snapshot = Snapshot.create();
+      SavedDataWriter.writeAsync(file, () -> save(new CompoundTag(), snapshot))
+          .thenAccept(
+              written -> {
+                if (!Boolean.TRUE.equals(written)) {
+                  this.snapshotFailed = true;
+                }
+              });
+      this.setDirty(false);
+    }
+  }
+
   @Override
   public CompoundTag save(CompoundTag compoundTag) {
+    return save(compoundTag, Snapshot.create());
+  }
+
+  private static CompoundTag save(CompoundTag compoundTag, Snapshot snapshot) {
 
     // Saving rewards items per year-month
-    log.info("{} saving reward data ... {}", Constants.LOG_NAME, rewardItemsMap);
+    log.info(
+        "{} saving reward data for {} months ...",
+        Constants.LOG_NAME,
+        snapshot.rewardItems().size());
     ListTag listTag = new ListTag();
-    for (Map.Entry<String, List<ItemStack>> reward : rewardItemsMap.entrySet()) {
+    for (Map.Entry<String, List<ItemStack>> reward : snapshot.rewardItems().entrySet()) {
       CompoundTag rewardTag = new CompoundTag();
       List<ItemStack> rewardItems = reward.getValue();
 
       // Storing rewards items per year-month
       ListTag itemListTag = new ListTag();
+      SplittableRandom fillRandom = null;
       for (int i = 0; i < rewardItems.size(); ++i) {
         ItemStack itemStack = rewardItems.get(i);
         if (itemStack.isEmpty()) {
-
           log.error(
               "Reward item for month {} and day {} is empty, will fill item!", reward.getKey(), i);
-          itemStack = Rewards.getNormalFillItem();
+          if (fillRandom == null) {
+            fillRandom = getFillRandom(reward.getKey());
+          }
+          itemStack = Rewards.getNormalFillItem(fillRandom);
         }
         CompoundTag itemStackTag = new CompoundTag();
         itemStack.save(itemStackTag);
@@ -322,21 +593,37 @@ public class RewardData extends SavedData {
       if (!itemListTag.isEmpty()) {
         rewardTag.putString(YEAR_MONTH_TAG, reward.getKey());
         rewardTag.put(ITEMS_TAG, itemListTag);
+        Integer planVersion = snapshot.planVersions().get(reward.getKey());
+        if (planVersion != null) {
+          rewardTag.putInt(PLAN_VERSION_TAG, planVersion);
+        }
+        Long planSeed = snapshot.planSeeds().get(reward.getKey());
+        if (planSeed != null) {
+          rewardTag.putLong(PLAN_SEED_TAG, planSeed);
+        }
         listTag.add(rewardTag);
       }
     }
     compoundTag.put(REWARDS_TAG, listTag);
 
+    // Saving replaced rewards items, which are still referenced by reward user records.
+    compoundTag.put(REPLACED_REWARDS_TAG, saveReplacedRewards(snapshot.replacedRewardItems()));
+    compoundTag.put(
+        REPLACED_SPECIAL_REWARDS_TAG, saveReplacedRewards(snapshot.replacedSpecialRewardItems()));
+
     // Early return if we have no special rewards data.
-    if (specialRewardItemsMap.isEmpty()) {
+    if (snapshot.specialRewardItems().isEmpty()) {
       log.info("{} No special rewards data found.", Constants.LOG_NAME);
       return compoundTag;
     }
 
     // Saving special rewards items per year-month
-    log.info("{} saving special reward data ... {}", Constants.LOG_NAME, specialRewardItemsMap);
+    log.info(
+        "{} saving special reward data for {} months ...",
+        Constants.LOG_NAME,
+        snapshot.specialRewardItems().size());
     ListTag specialListTag = new ListTag();
-    for (Map.Entry<String, List<ItemStack>> reward : specialRewardItemsMap.entrySet()) {
+    for (Map.Entry<String, List<ItemStack>> reward : snapshot.specialRewardItems().entrySet()) {
       CompoundTag rewardTag = new CompoundTag();
       List<ItemStack> rewardItems = reward.getValue();
 
@@ -361,4 +648,72 @@ public class RewardData extends SavedData {
 
     return compoundTag;
   }
+
+  /** Seeded random of the month, so that empty rewards are always filled with the same items. */
+  private static SplittableRandom getFillRandom(String key) {
+    String[] yearMonth = key.split("-");
+    try {
+      return RewardRandom.forMonth(
+          Integer.parseInt(yearMonth[0]), Integer.parseInt(yearMonth[1]), RewardRandom.FILL_STREAM);
+    } catch (RuntimeException e) {
+      log.error("{} invalid reward month {}:", Constants.LOG_NAME, key, e);
+      return RewardRandom.forMonth(0, 0, RewardRandom.FILL_STREAM);
+    }
+  }
+
+  private static ListTag saveReplacedRewards(
+      Map<String, Map<Integer, List<ItemStack>>> replacedRewardsMap) {
+    ListTag listTag = new ListTag();
+    for (Map.Entry<String, Map<Integer, List<ItemStack>>> replacedRewards :
+        replacedRewardsMap.entrySet()) {
+      for (List<ItemStack> rewardItems : replacedRewards.getValue().values()) {
+        ListTag itemListTag = new ListTag();
+        for (ItemStack itemStack : rewardItems) {
+          itemListTag.add(itemStack.save(new CompoundTag()));
+        }
+        CompoundTag rewardTag = new CompoundTag();
+        rewardTag.putString(YEAR_MONTH_TAG, replacedRewards.getKey());
+        rewardTag.put(ITEMS_TAG, itemListTag);
+        listTag.add(rewardTag);
+      }
+    }
+    return listTag;
+  }
+
+  /**
+   * Copy of the reward maps for the writer thread. Only the maps and lists are copied, the item
+   * stacks are shared templates which are never modified.
+   */
+  private record Snapshot(
+      Map<String, List<ItemStack>> rewardItems,
+      Map<String, List<ItemStack>> specialRewardItems,
+      Map<String, Integer> planVersions,
+      Map<String, Long> planSeeds,
+      Map<String, Map<Integer, List<ItemStack>>> replacedRewardItems,
+      Map<String, Map<Integer, List<ItemStack>>> replacedSpecialRewardItems) {
+
+    private static Snapshot create() {
+      return new Snapshot(
+          copyRewards(rewardItemsMap),
+          copyRewards(specialRewardItemsMap),
+          Map.copyOf(planVersionMap),
+          Map.copyOf(planSeedMap),
+          copyReplacedRewards(replacedRewardItemsMap),
+          copyReplacedRewards(replacedSpecialRewardItemsMap));
+    }
+
+    private static Map<String, List<ItemStack>> copyRewards(Map<String, List<ItemStack>> rewards) {
+      Map<String, List<ItemStack>> rewardsCopy = new HashMap<>();
+      rewards.forEach((key, rewardItems) -> rewardsCopy.put(key, List.copyOf(rewardItems)));
+      return rewardsCopy;
+    }
+
+    private static Map<String, Map<Integer, List<ItemStack>>> copyReplacedRewards(
+        Map<String, Map<Integer, List<ItemStack>>> replacedRewards) {
+      Map<String, Map<Integer, List<ItemStack>>> replacedRewardsCopy = new HashMap<>();
+      replacedRewards.forEach(
+          (key, rewardItems) -> replacedRewardsCopy.put(key, Map.copyOf(rewardItems)));
+      return replacedRewardsCopy;
+    }
+  }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.minecraft.nbt.CompoundTag;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Compressed per-month archive files for closed months of the reward user data. Archived months
+ * are not kept in memory and are only read on demand, e.g. by admin commands.
+ */
+public class RewardUserArchive {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private final Path archivePath;
+  private final String fileId;
+  private final String rewardsTag;
+  private final Pattern archiveFilePattern;
+
+  public RewardUserArchive(Path archivePath, String fileId, String rewardsTag) {
+    this.archivePath = archivePath;
+    this.fileId = fileId;
+    this.rewardsTag = rewardsTag;
+    this.archiveFilePattern = Pattern.compile(Pattern.quote(fileId) + "_(\\d{4})-(\\d{2})\\.dat");
+  }
+
+  public String getArchiveFileId(int yearMonthKey) {
+    return String.format(
+        "%s_%04d-%02d",
+        this.fileId,
+        RewardUserRecord.getYearFromKey(yearMonthKey),
+        RewardUserRecord.getMonthFromKey(yearMonthKey));
+  }
+
+  public File getArchiveFile(int yearMonthKey) {
+    return this.archivePath.resolve(getArchiveFileId(yearMonthKey) + ".dat").toFile();
+  }
+
+  public RewardUserShard createShard(int yearMonthKey) {
+    return new RewardUserShard(getArchiveFileId(yearMonthKey), this.rewardsTag);
+  }
+
+  /** Reads the archived month or returns null, if there is no archive for the month. */
+  public RewardUserShard read(int yearMonthKey) {
+    File archiveFile = getArchiveFile(yearMonthKey);
+    try {
+      CompoundTag compoundTag = SavedDataWriter.read(archiveFile);
+      return compoundTag != null
+          ? RewardUserShard.load(
+              compoundTag, getArchiveFileId(yearMonthKey), this.rewardsTag, true)
+          : null;
+    } catch (IOException e) {
+      log.error("{} unable to read archive {}:", Constants.LOG_NAME, archiveFile, e);
+      return null;
+    }
+  }
+
+  public RewardUserMonth getRewardMonth(int yearMonthKey, UUID uuid) {
+    RewardUserShard archiveShard = read(yearMonthKey);
+    RewardUserRecord rewardUserRecord =
+        archiveShard != null ? archiveShard.getRewardUserRecord(uuid) : null;
+    return rewardUserRecord != null ? rewardUserRecord.getRewardMonth(yearMonthKey) : null;
+  }
+
+  /**
+   * Merges the given month into the existing archive and writes it in the background. The future
+   * completes with true, after the archive was written.
+   */
+  public CompletableFuture<Boolean> write(int yearMonthKey, RewardUserShard monthShard) {
+    log.info(
+        "{} archiving {} reward user records to {} ...",
+        Constants.LOG_NAME,
+        monthShard.size(),
+        getArchiveFileId(yearMonthKey));
+    RewardUserShard archiveShard = read(yearMonthKey);
+    if (archiveShard == null) {
+      archiveShard = monthShard;
+    } else {
+      // Each archive only contains a single month, so existing entries are replaced as a whole.
+      for (UUID uuid : monthShard.getRewardUserUUIDs()) {
+        archiveShard.removeRewardUserRecord(uuid);
+        monthShard.moveRewardUserRecordTo(archiveShard, uuid);
+      }
+    }
+    return SavedDataWriter.writeAsync(
+        getArchiveFile(yearMonthKey), archiveShard.save(new CompoundTag()));
+  }
+
+  /** Removes archives which are older than the given number of months. */
+  public void applyRetention(int currentYearMonthKey, int retentionMonths) {
+    if (retentionMonths <= 0 || !Files.isDirectory(this.archivePath)) {
+      return;
+    }
+    File[] archiveFiles = this.archivePath.toFile().listFiles();
+    if (archiveFiles == null) {
+      return;
+    }
+    for (File archiveFile : archiveFiles) {
+      Matcher matcher = this.archiveFilePattern.matcher(archiveFile.getName());
+      if (!matcher.matches()) {
+        continue;
+      }
+      int yearMonthKey =
+          RewardUserRecord.getYearMonthKey(
+              Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+      if (isExpired(yearMonthKey, currentYearMonthKey, retentionMonths)) {
+        log.info("{} removing expired archive {} ...", Constants.LOG_NAME, archiveFile);
+        try {
+          Files.deleteIfExists(archiveFile.toPath());
+        } catch (IOException e) {
+          log.error("{} unable to remove archive {}:", Constants.LOG_NAME, archiveFile, e);
+        }
+      }
+    }
+  }
+
+  /** Returns true, if the month is older than the given number of months. */
+  public static boolean isExpired(int yearMonthKey, int currentYearMonthKey, int retentionMonths) {
+    return retentionMonths > 0
+        && getMonthIndex(yearMonthKey) < getMonthIndex(currentYearMonthKey) - retentionMonths;
+  }
+
+  public boolean isArchived(int yearMonthKey) {
+    return getArchiveFile(yearMonthKey).exists();
+  }
+
+  private static int getMonthIndex(int yearMonthKey) {
+    return RewardUserRecord.getYearFromKey(yearMonthKey) * 12
+        + RewardUserRecord.getMonthFromKey(yearMonthKey)
+        - 1;
+  }
+}
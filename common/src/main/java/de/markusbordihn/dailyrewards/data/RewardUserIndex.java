@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Queryable index of the granted and claimed rewards per player and month. The index is fed with
+ * snapshots of changed months from the server thread, the implementation is responsible to write
+ * and query them off-thread.
+ */
+public interface RewardUserIndex {
+
+  /** Opens the index and returns true, if the index was newly created and needs a full sync. */
+  boolean open() throws Exception;
+
+  /**
+   * Inserts or replaces the given months of the players. The months are built by the supplier on
+   * the index thread, so that the server thread only needs to hand over the encoded records.
+   */
+  void update(Supplier<Map<UUID, List<MonthEntry>>> monthEntries);
+
+  /** Removes the month of the given player or of all players, if the player is null. */
+  void removeMonth(UUID uuid, int yearMonthKey);
+
+  void clear();
+
+  CompletableFuture<List<UUID>> findPlayersWithUnclaimedRewards(int yearMonthKey);
+
+  CompletableFuture<List<UUID>> findPlayersWithItem(int yearMonthKey, String itemId);
+
+  void close();
+
+  /** Snapshot of a single month of a player, with the item id per reward day. */
+  record MonthEntry(
+      int yearMonthKey,
+      int rewardedDays,
+      int rewardedMask,
+      int claimedMask,
+      List<String> itemIds,
+      List<Integer> itemCounts) {}
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import static de.markusbordihn.dailyrewards.config.ModConfigs.COMMON;
+
+import de.markusbordihn.dailyrewards.Constants;
+import de.markusbordihn.dailyrewards.item.ModItems;
+import de.markusbordihn.dailyrewards.rewards.RewardItemPool;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Compact encoding of the reward items of a player and month. Items which are matching the reward
+ * of the month for the same day are stored as bit in a reference mask, marker items like taken
+ * rewards as bit in their own mask and only differing items are stored as full item stack.
+ */
+public class RewardUserItemCodec {
+
+  public static final String ITEM_COUNT_TAG = "ItemCount";
+  public static final String REFERENCE_DAYS_TAG = "ReferenceDays";
+  public static final String REFERENCE_HASH_TAG = "ReferenceHash";
+  public static final String TAKEN_DAYS_TAG = "TakenDays";
+  public static final String SKIPPED_DAYS_TAG = "SkippedDays";
+  public static final String UNLOCKED_DAYS_TAG = "UnlockedDays";
+  public static final String EXTRA_ITEMS_TAG = "ExtraItems";
+  public static final String DAY_TAG = "Day";
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+  private static final int MAX_COMPACT_ITEMS = Integer.SIZE;
+  private static final String AIR_ID = "minecraft:air";
+  private static final Map<String, IntFunction<List<ItemStack>>> referenceRewardsMap =
+      new ConcurrentHashMap<>();
+  private static final Map<String, ReplacedRewards> replacedRewardsMap = new ConcurrentHashMap<>();
+
+  protected RewardUserItemCodec() {}
+
+  /**
+   * Registers the source of the month rewards, which are referenced by the given rewards tag, and
+   * the source of the replaced month rewards, which are still referenced by older records.
+   */
+  public static void registerReferenceRewards(
+      String rewardsTag,
+      IntFunction<List<ItemStack>> referenceRewards,
+      ReplacedRewards replacedRewards) {
+    referenceRewardsMap.put(rewardsTag, referenceRewards);
+    replacedRewardsMap.put(rewardsTag, replacedRewards);
+  }
+
+  public static List<ItemStack> getReferenceRewards(String rewardsTag, int yearMonthKey) {
+    IntFunction<List<ItemStack>> referenceRewards = referenceRewardsMap.get(rewardsTag);
+    return referenceRewards != null ? referenceRewards.apply(yearMonthKey) : null;
+  }
+
+  public static void encode(
+      CompoundTag rewardUserTag, List<ItemStack> rewardItems, List<ItemStack> referenceItems) {
+    // Use the full item stack format, if the compact format is disabled or not possible.
+    if (!COMMON.userDataCompactItems || rewardItems.size() > MAX_COMPACT_ITEMS) {
+      ListTag itemListTag = new ListTag();
+      for (ItemStack itemStack : rewardItems) {
+        CompoundTag itemStackTag = new CompoundTag();
+        itemStack.save(itemStackTag);
+        itemListTag.add(itemStackTag);
+      }
+      rewardUserTag.put(RewardUserShard.ITEMS_TAG, itemListTag);
+      return;
+    }
+
+    int referenceDays = 0;
+    int takenDays = 0;
+    int skippedDays = 0;
+    int unlockedDays = 0;
+    ListTag extraItemListTag = new ListTag();
+    for (int day = 0; day < rewardItems.size(); day++) {
+      ItemStack itemStack = rewardItems.get(day);
+      if (isMarkerItem(itemStack, ModItems.TAKEN_REWARD.get())) {
+        takenDays |= 1 << day;
+      } else if (isMarkerItem(itemStack, ModItems.SKIPPED_DAY.get())) {
+        skippedDays |= 1 << day;
+      } else if (isMarkerItem(itemStack, ModItems.UNLOCK_DAY.get())) {
+        unlockedDays |= 1 << day;
+      } else if (referenceItems != null
+          && day < referenceItems.size()
+          && !itemStack.isEmpty()
+          && ItemStack.matches(itemStack, referenceItems.get(day))) {
+        // Empty items are always stored as extra item, so that the rewarded days are known.
+        referenceDays |= 1 << day;
+      } else {
+        CompoundTag itemStackTag = new CompoundTag();
+        itemStack.save(itemStackTag);
+        itemStackTag.putByte(DAY_TAG, (byte) day);
+        extraItemListTag.add(itemStackTag);
+      }
+    }
+
+    rewardUserTag.putInt(ITEM_COUNT_TAG, rewardItems.size());
+    if (referenceDays != 0) {
+      rewardUserTag.putInt(REFERENCE_DAYS_TAG, referenceDays);
+      rewardUserTag.putInt(REFERENCE_HASH_TAG, getReferenceHash(referenceItems));
+    }
+    if (takenDays != 0) {
+      rewardUserTag.putInt(TAKEN_DAYS_TAG, takenDays);
+    }
+    if (skippedDays != 0) {
+      rewardUserTag.putInt(SKIPPED_DAYS_TAG, skippedDays);
+    }
+    if (unlockedDays != 0) {
+      rewardUserTag.putInt(UNLOCKED_DAYS_TAG, unlockedDays);
+    }
+    if (!extraItemListTag.isEmpty()) {
+      rewardUserTag.put(EXTRA_ITEMS_TAG, extraItemListTag);
+    }
+  }
+
+  /**
+   * Returns the month rewards, which were referenced when the record was encoded. These are the
+   * current month rewards or a retained copy of the replaced month rewards with the same hash.
+   */
+  private static List<ItemStack> getReferenceRewards(
+      String rewardsTag, int yearMonthKey, int referenceHash) {
+    List<ItemStack> referenceItems = getReferenceRewards(rewardsTag, yearMonthKey);
+    if (referenceItems != null && getReferenceHash(referenceItems) == referenceHash) {
+      return referenceItems;
+    }
+    ReplacedRewards replacedRewards = replacedRewardsMap.get(rewardsTag);
+    return replacedRewards != null ? replacedRewards.get(yearMonthKey, referenceHash) : null;
+  }
+
+  public static List<ItemStack> decode(
+      CompoundTag rewardUserTag, String rewardsTag, int yearMonthKey, String rewardKey) {
+    List<ItemStack> rewardItems = new ArrayList<>();
+
+    // Full item stack format, used by older versions and as fallback.
+    if (!rewardUserTag.contains(ITEM_COUNT_TAG)) {
+      ListTag itemListTag = rewardUserTag.getList(RewardUserShard.ITEMS_TAG, 10);
+      for (int i = 0; i < itemListTag.size(); ++i) {
+        rewardItems.add(RewardItemPool.intern(ItemStack.of(itemListTag.getCompound(i))));
+      }
+      return rewardItems;
+    }
+
+    int itemCount = Math.min(MAX_COMPACT_ITEMS, rewardUserTag.getInt(ITEM_COUNT_TAG));
+    int referenceDays = rewardUserTag.getInt(REFERENCE_DAYS_TAG);
+    int takenDays = rewardUserTag.getInt(TAKEN_DAYS_TAG);
+    int skippedDays = rewardUserTag.getInt(SKIPPED_DAYS_TAG);
+    int unlockedDays = rewardUserTag.getInt(UNLOCKED_DAYS_TAG);
+    List<ItemStack> referenceItems =
+        referenceDays != 0
+            ? getReferenceRewards(
+                rewardsTag, yearMonthKey, rewardUserTag.getInt(REFERENCE_HASH_TAG))
+            : null;
+    if (referenceDays != 0 && referenceItems == null) {
+      log.error(
+          "{} Referenced rewards of the month for {} are no longer available, referenced days are"
+              + " restored as empty rewards!",
+          Constants.LOG_NAME,
+          rewardKey);
+    }
+
+    for (int day = 0; day < itemCount; day++) {
+      int dayMask = 1 << day;
+      if ((takenDays & dayMask) != 0) {
+        rewardItems.add(RewardItemPool.intern(new ItemStack(ModItems.TAKEN_REWARD.get())));
+      } else if ((skippedDays & dayMask) != 0) {
+        rewardItems.add(RewardItemPool.intern(new ItemStack(ModItems.SKIPPED_DAY.get())));
+      } else if ((unlockedDays & dayMask) != 0) {
+        rewardItems.add(RewardItemPool.intern(new ItemStack(ModItems.UNLOCK_DAY.get())));
+      } else if ((referenceDays & dayMask) != 0
+          && referenceItems != null
+          && day < referenceItems.size()) {
+        rewardItems.add(referenceItems.get(day));
+      } else {
+        rewardItems.add(RewardItemPool.intern(new ItemStack(ModItems.EMPTY_REWARD.get())));
+      }
+    }
+
+    // Restore differing items at their day.
+    ListTag extraItemListTag = rewardUserTag.getList(EXTRA_ITEMS_TAG, 10);
+    for (int i = 0; i < extraItemListTag.size(); ++i) {
+      CompoundTag itemStackTag = extraItemListTag.getCompound(i);
+      int day = itemStackTag.getByte(DAY_TAG);
+      if (day >= 0 && day < rewardItems.size()) {
+        rewardItems.set(day, RewardItemPool.intern(ItemStack.of(itemStackTag)));
+      }
+    }
+    return rewardItems;
+  }
+
+  /**
+   * Collects the item id and count per day for the query index, without decoding the item stacks.
+   * Claimed days are indexed with the reward item of the month for the same day. Only the tags and
+   * the month rewards are read, so this is safe to call from the index thread.
+   */
+  public static void collectIndexItems(
+      CompoundTag rewardUserTag,
+      String rewardsTag,
+      int yearMonthKey,
+      List<String> itemIds,
+      List<Integer> itemCounts) {
+    List<ItemStack> monthItems = getReferenceRewards(rewardsTag, yearMonthKey);
+    String takenRewardId = getItemId(ModItems.TAKEN_REWARD.get());
+
+    // Full item stack format, used by older versions and as fallback.
+    if (!rewardUserTag.contains(ITEM_COUNT_TAG)) {
+      ListTag itemListTag = rewardUserTag.getList(RewardUserShard.ITEMS_TAG, 10);
+      for (int day = 0; day < itemListTag.size(); day++) {
+        CompoundTag itemStackTag = itemListTag.getCompound(day);
+        if (takenRewardId.equals(itemStackTag.getString("id"))
+            && monthItems != null
+            && day < monthItems.size()) {
+          addIndexItem(monthItems.get(day), itemIds, itemCounts);
+        } else {
+          itemIds.add(itemStackTag.getString("id"));
+          itemCounts.add((int) itemStackTag.getByte("Count"));
+        }
+      }
+      return;
+    }
+
+    int itemCount = getItemCount(rewardUserTag);
+    int referenceDays = rewardUserTag.getInt(REFERENCE_DAYS_TAG);
+    int takenDays = rewardUserTag.getInt(TAKEN_DAYS_TAG);
+    int skippedDays = rewardUserTag.getInt(SKIPPED_DAYS_TAG);
+    int unlockedDays = rewardUserTag.getInt(UNLOCKED_DAYS_TAG);
+    List<ItemStack> referenceItems =
+        referenceDays != 0
+            ? getReferenceRewards(
+                rewardsTag, yearMonthKey, rewardUserTag.getInt(REFERENCE_HASH_TAG))
+            : null;
+    for (int day = 0; day < itemCount; day++) {
+      int dayMask = 1 << day;
+      if ((takenDays & dayMask) != 0) {
+        addIndexItem(
+            monthItems != null && day < monthItems.size()
+                ? monthItems.get(day)
+                : new ItemStack(ModItems.TAKEN_REWARD.get()),
+            itemIds,
+            itemCounts);
+      } else if ((skippedDays & dayMask) != 0) {
+        addIndexItem(new ItemStack(ModItems.SKIPPED_DAY.get()), itemIds, itemCounts);
+      } else if ((unlockedDays & dayMask) != 0) {
+        addIndexItem(new ItemStack(ModItems.UNLOCK_DAY.get()), itemIds, itemCounts);
+      } else if ((referenceDays & dayMask) != 0
+          && referenceItems != null
+          && day < referenceItems.size()) {
+        addIndexItem(referenceItems.get(day), itemIds, itemCounts);
+      } else {
+        addIndexItem(new ItemStack(ModItems.EMPTY_REWARD.get()), itemIds, itemCounts);
+      }
+    }
+
+    // Differing items at their day.
+    ListTag extraItemListTag = rewardUserTag.getList(EXTRA_ITEMS_TAG, 10);
+    for (int i = 0; i < extraItemListTag.size(); ++i) {
+      CompoundTag itemStackTag = extraItemListTag.getCompound(i);
+      int day = itemStackTag.getByte(DAY_TAG);
+      if (day >= 0 && day < itemIds.size()) {
+        itemIds.set(day, itemStackTag.getString("id"));
+        itemCounts.set(day, (int) itemStackTag.getByte("Count"));
+      }
+    }
+  }
+
+  private static void addIndexItem(
+      ItemStack itemStack, List<String> itemIds, List<Integer> itemCounts) {
+    itemIds.add(getItemId(itemStack.getItem()));
+    itemCounts.add(itemStack.getCount());
+  }
+
+  private static String getItemId(Item item) {
+    return BuiltInRegistries.ITEM.getKey(item).toString();
+  }
+
+  /** Copies the encoded reward items from the source tag, without decoding them. */
+  public static void copyEncoded(CompoundTag sourceTag, CompoundTag rewardUserTag) {
+    for (String key :
+        List.of(
+            RewardUserShard.ITEMS_TAG,
+            ITEM_COUNT_TAG,
+            REFERENCE_DAYS_TAG,
+            REFERENCE_HASH_TAG,
+            TAKEN_DAYS_TAG,
+            SKIPPED_DAYS_TAG,
+            UNLOCKED_DAYS_TAG,
+            EXTRA_ITEMS_TAG)) {
+      if (sourceTag.contains(key)) {
+        rewardUserTag.put(key, sourceTag.get(key));
+      }
+    }
+  }
+
+  public static int getItemCount(CompoundTag rewardUserTag) {
+    return rewardUserTag.contains(ITEM_COUNT_TAG)
+        ? Math.min(MAX_COMPACT_ITEMS, rewardUserTag.getInt(ITEM_COUNT_TAG))
+        : rewardUserTag.getList(RewardUserShard.ITEMS_TAG, 10).size();
+  }
+
+  /**
+   * Bit mask of the days with a reward item, without decoding the items. Like {@link
+   * RewardUserMonth#updateRewardMasks()}, days with an empty item are not rewarded.
+   */
+  public static int getRewardedMask(CompoundTag rewardUserTag) {
+    if (rewardUserTag.contains(ITEM_COUNT_TAG)) {
+      // Every day is a marker, referenced or extra item and only extra items could be empty.
+      int itemCount = getItemCount(rewardUserTag);
+      int rewardedMask = itemCount >= MAX_COMPACT_ITEMS ? -1 : (1 << itemCount) - 1;
+      ListTag extraItemListTag = rewardUserTag.getList(EXTRA_ITEMS_TAG, 10);
+      for (int i = 0; i < extraItemListTag.size(); ++i) {
+        CompoundTag itemStackTag = extraItemListTag.getCompound(i);
+        int day = itemStackTag.getByte(DAY_TAG);
+        if (day >= 0 && day < itemCount && isEmptyItemTag(itemStackTag)) {
+          rewardedMask &= ~(1 << day);
+        }
+      }
+      return rewardedMask;
+    }
+    int rewardedMask = 0;
+    ListTag itemListTag = rewardUserTag.getList(RewardUserShard.ITEMS_TAG, 10);
+    for (int day = 0; day < itemListTag.size() && day < MAX_COMPACT_ITEMS; day++) {
+      if (!isEmptyItemTag(itemListTag.getCompound(day))) {
+        rewardedMask |= 1 << day;
+      }
+    }
+    return rewardedMask;
+  }
+
+  /** Bit mask of the days with a claimed reward, without decoding the items. */
+  public static int getClaimedMask(CompoundTag rewardUserTag) {
+    if (rewardUserTag.contains(ITEM_COUNT_TAG)) {
+      return rewardUserTag.getInt(TAKEN_DAYS_TAG);
+    }
+    String takenRewardId = BuiltInRegistries.ITEM.getKey(ModItems.TAKEN_REWARD.get()).toString();
+    int claimedMask = 0;
+    ListTag itemListTag = rewardUserTag.getList(RewardUserShard.ITEMS_TAG, 10);
+    for (int day = 0; day < itemListTag.size() && day < MAX_COMPACT_ITEMS; day++) {
+      if (takenRewardId.equals(itemListTag.getCompound(day).getString("id"))) {
+        claimedMask |= 1 << day;
+      }
+    }
+    return claimedMask;
+  }
+
+  private static boolean isEmptyItemTag(CompoundTag itemStackTag) {
+    return itemStackTag.getByte("Count") <= 0 || AIR_ID.equals(itemStackTag.getString("id"));
+  }
+
+  private static boolean isMarkerItem(ItemStack itemStack, Item item) {
+    return itemStack.is(item) && itemStack.getCount() == 1 && !itemStack.hasTag();
+  }
+
+  public static int getReferenceHash(List<ItemStack> referenceItems) {
+    int hash = referenceItems.size();
+    for (ItemStack itemStack : referenceItems) {
+      hash = 31 * hash + BuiltInRegistries.ITEM.getKey(itemStack.getItem()).hashCode();
+      hash = 31 * hash + itemStack.getCount();
+      hash = 31 * hash + (itemStack.hasTag() ? itemStack.getTag().hashCode() : 0);
+    }
+    return hash;
+  }
+
+  /** Source of the replaced month rewards, by year-month key and reference hash. */
+  @FunctionalInterface
+  public interface ReplacedRewards {
+    List<ItemStack> get(int yearMonthKey, int referenceHash);
+  }
+}
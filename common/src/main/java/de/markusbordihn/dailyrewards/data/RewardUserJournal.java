@@ -0,0 +1,391 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append-only journal of the reward user data changes between two saves.
+ *
+ * <p>Every entry contains the complete encoded state of a changed player record or a bulk
+ * operation, so replaying the journal over the last saved data is idempotent. Entries are collected
+ * on the server thread and appended and synced as group commit by the {@link SavedDataWriter}
+ * thread, after a max. latency or as soon as the batch is full. After a save the journal is sealed
+ * and the sealed segments are deleted, as soon as the saved data was written.
+ */
+public class RewardUserJournal {
+
+  public static final String OPERATION_TAG = "Operation";
+  public static final String TIME_TAG = "Time";
+  public static final String UUID_TAG = "UUID";
+  public static final String ENTRIES_TAG = "Entries";
+  public static final String RESET_MONTH_OPERATION = "reset_month";
+  public static final String CLEAR_ALL_OPERATION = "clear_all";
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private final Path dataPath;
+  private final String fileId;
+  private final Pattern sealedFilePattern;
+  private final Function<UUID, List<CompoundTag>> recordEncoder;
+  private final Map<UUID, String> pendingRecords = new LinkedHashMap<>();
+  private final List<CompoundTag> pendingEntries = new ArrayList<>();
+  private final AtomicLong flushedBatches = new AtomicLong();
+  private final AtomicLong flushedEntries = new AtomicLong();
+  private final AtomicInteger maxBatchSize = new AtomicInteger();
+  private final AtomicLong totalFlushNanos = new AtomicLong();
+  private final AtomicLong maxFlushNanos = new AtomicLong();
+  private final AtomicLong totalCommitLatencyNanos = new AtomicLong();
+  private final List<CompletableFuture<Boolean>> checkpointWrites = new ArrayList<>();
+  private long pendingSinceNanos = 0;
+  private int pendingSinceTick = -1;
+  private int sequence = 0;
+  private int checkpointSequence = 0;
+  private boolean hasUnsealedEntries = false;
+
+  public RewardUserJournal(
+      Path dataPath, String fileId, Function<UUID, List<CompoundTag>> recordEncoder) {
+    this.dataPath = dataPath;
+    this.fileId = fileId;
+    this.sealedFilePattern = Pattern.compile(Pattern.quote(fileId) + "\\.journal\\.(\\d+)");
+    this.recordEncoder = recordEncoder;
+  }
+
+  public File getJournalFile() {
+    return this.dataPath.resolve(this.fileId + ".journal").toFile();
+  }
+
+  public File getSealedJournalFile(int sequence) {
+    return this.dataPath.resolve(this.fileId + ".journal." + sequence).toFile();
+  }
+
+  /** Reads all entries of the sealed segments and of the current journal in their order. */
+  public List<CompoundTag> read() {
+    List<CompoundTag> entries = new ArrayList<>();
+    for (Map.Entry<Integer, File> sealedFile : getSealedJournalFiles().entrySet()) {
+      this.sequence = Math.max(this.sequence, sealedFile.getKey());
+      readEntries(sealedFile.getValue(), entries);
+    }
+    readEntries(getJournalFile(), entries);
+
+    // Existing entries are only obsolete after the next save.
+    this.hasUnsealedEntries = !entries.isEmpty() || getJournalFile().exists();
+    return entries;
+  }
+
+  /**
+   * Records a change of the player record, which is encoded with the next batch. Several changes
+   * of the same player within one batch are only written once.
+   */
+  public void append(UUID uuid, String operation, int maxBatchSize) {
+    markPending();
+    this.pendingRecords.merge(
+        uuid,
+        operation,
+        (operations, newOperation) ->
+            operations.contains(newOperation) ? operations : operations + "," + newOperation);
+    if (maxBatchSize > 0 && getPendingSize() >= maxBatchSize) {
+      flush();
+    }
+  }
+
+  /** Records a bulk operation, after the already recorded player changes. */
+  public void appendOperation(String operation, CompoundTag operationTag) {
+    markPending();
+    encodePendingRecords();
+    operationTag.putString(OPERATION_TAG, operation);
+    operationTag.putLong(TIME_TAG, System.currentTimeMillis());
+    this.pendingEntries.add(operationTag);
+  }
+
+  public int getPendingSize() {
+    return this.pendingRecords.size() + this.pendingEntries.size();
+  }
+
+  /** Appends and syncs the recorded changes as single batch in the background. */
+  public void flush() {
+    encodePendingRecords();
+    if (this.pendingEntries.isEmpty()) {
+      return;
+    }
+    List<CompoundTag> entries = List.copyOf(this.pendingEntries);
+    long pendingSince = this.pendingSinceNanos;
+    this.pendingEntries.clear();
+    this.pendingSinceTick = -1;
+    this.hasUnsealedEntries = true;
+    File journalFile = getJournalFile();
+    SavedDataWriter.execute(() -> writeBatch(journalFile, entries, pendingSince));
+  }
+
+  /**
+   * Seals the current journal, after the saved data snapshot was taken. The sealed segments are
+   * deleted with the next {@link #handleServerTick}, after all snapshots of the same save were
+   * written successfully.
+   */
+  public void checkpoint(CompletableFuture<Boolean> snapshotWritten) {
+    flush();
+    if (this.checkpointSequence > 0) {
+      this.checkpointWrites.add(snapshotWritten);
+    }
+    if (!this.hasUnsealedEntries) {
+      return;
+    }
+    int sealedSequence = ++this.sequence;
+    File journalFile = getJournalFile();
+    File sealedJournalFile = getSealedJournalFile(sealedSequence);
+    SavedDataWriter.execute(() -> sealJournal(journalFile, sealedJournalFile));
+    this.checkpointSequence = sealedSequence;
+    this.checkpointWrites.add(snapshotWritten);
+    this.hasUnsealedEntries = false;
+  }
+
+  /** Deletes sealed segments and flushes the pending batch, after the given max. latency. */
+  public void handleServerTick(int tickCount, int maxLatencyTicks) {
+    if (this.checkpointSequence > 0) {
+      deleteSealedJournalsAfterWrites(this.checkpointSequence, List.copyOf(this.checkpointWrites));
+      this.checkpointSequence = 0;
+      this.checkpointWrites.clear();
+    }
+    if (getPendingSize() == 0) {
+      return;
+    }
+    if (this.pendingSinceTick < 0) {
+      this.pendingSinceTick = tickCount;
+    }
+    if (tickCount - this.pendingSinceTick >= maxLatencyTicks) {
+      flush();
+    }
+  }
+
+  /**
+   * Deletes the sealed segments of the last checkpoint on shutdown, because there is no further
+   * server tick after the final save. Needs to be called after the pending snapshots were written,
+   * e.g. after {@link SavedDataWriter#flush}.
+   */
+  public void close() {
+    if (this.checkpointSequence <= 0) {
+      return;
+    }
+    boolean written =
+        this.checkpointWrites.stream()
+            .allMatch(
+                snapshotWritten ->
+                    snapshotWritten.isDone()
+                        && !snapshotWritten.isCompletedExceptionally()
+                        && Boolean.TRUE.equals(snapshotWritten.getNow(false)));
+    if (written) {
+      deleteSealedJournals(this.checkpointSequence);
+    } else {
+      log.warn(
+          "{} keeping journal {} up to {}, because not all saved data were written!",
+          Constants.LOG_NAME,
+          getJournalFile(),
+          this.checkpointSequence);
+    }
+    this.checkpointSequence = 0;
+    this.checkpointWrites.clear();
+  }
+
+  public Statistics getStatistics() {
+    long batches = this.flushedBatches.get();
+    return new Statistics(
+        batches,
+        this.flushedEntries.get(),
+        this.maxBatchSize.get(),
+        batches > 0 ? this.totalFlushNanos.get() / batches / 1000 : 0,
+        this.maxFlushNanos.get() / 1000,
+        batches > 0 ? this.totalCommitLatencyNanos.get() / batches / 1000 : 0);
+  }
+
+  private void markPending() {
+    if (getPendingSize() == 0) {
+      this.pendingSinceNanos = System.nanoTime();
+    }
+  }
+
+  private void writeBatch(File file, List<CompoundTag> entries, long pendingSince) {
+    long startNanos = System.nanoTime();
+    writeEntries(file, entries);
+    long endNanos = System.nanoTime();
+    this.flushedBatches.incrementAndGet();
+    this.flushedEntries.addAndGet(entries.size());
+    this.maxBatchSize.accumulateAndGet(entries.size(), Math::max);
+    this.totalFlushNanos.addAndGet(endNanos - startNanos);
+    this.maxFlushNanos.accumulateAndGet(endNanos - startNanos, Math::max);
+    this.totalCommitLatencyNanos.addAndGet(endNanos - pendingSince);
+  }
+
+  private void encodePendingRecords() {
+    if (this.pendingRecords.isEmpty()) {
+      return;
+    }
+    long time = System.currentTimeMillis();
+    for (Map.Entry<UUID, String> pendingRecord : this.pendingRecords.entrySet()) {
+      CompoundTag entryTag = new CompoundTag();
+      entryTag.putString(OPERATION_TAG, pendingRecord.getValue());
+      entryTag.putLong(TIME_TAG, time);
+      entryTag.putUUID(UUID_TAG, pendingRecord.getKey());
+      ListTag entriesTag = new ListTag();
+      entriesTag.addAll(this.recordEncoder.apply(pendingRecord.getKey()));
+      entryTag.put(ENTRIES_TAG, entriesTag);
+      this.pendingEntries.add(entryTag);
+    }
+    this.pendingRecords.clear();
+  }
+
+  private Map<Integer, File> getSealedJournalFiles() {
+    Map<Integer, File> sealedFiles = new TreeMap<>();
+    File[] files = this.dataPath.toFile().listFiles();
+    if (files == null) {
+      return sealedFiles;
+    }
+    for (File file : files) {
+      Matcher matcher = this.sealedFilePattern.matcher(file.getName());
+      if (matcher.matches()) {
+        sealedFiles.put(Integer.parseInt(matcher.group(1)), file);
+      }
+    }
+    return sealedFiles;
+  }
+
+  private static void readEntries(File file, List<CompoundTag> entries) {
+    if (!file.exists()) {
+      return;
+    }
+    try (DataInputStream dataInput =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      while (true) {
+        entries.add(NbtIo.read(dataInput));
+      }
+    } catch (EOFException e) {
+      // End of the journal or an incomplete last entry, which was never synced.
+    } catch (IOException e) {
+      log.error("{} unable to read journal {} completely:", Constants.LOG_NAME, file, e);
+    }
+  }
+
+  private static void writeEntries(File file, List<CompoundTag> entries) {
+    try {
+      File parentFile = file.getParentFile();
+      if (parentFile != null && !parentFile.exists()) {
+        Files.createDirectories(parentFile.toPath());
+      }
+      try (FileOutputStream fileOutput = new FileOutputStream(file, true)) {
+        DataOutputStream dataOutput = new DataOutputStream(new BufferedOutputStream(fileOutput));
+        for (CompoundTag entry : entries) {
+          NbtIo.write(entry, dataOutput);
+        }
+        dataOutput.flush();
+        fileOutput.getFD().sync();
+      }
+    } catch (IOException e) {
+      log.error("{} could not append to journal {}:", Constants.LOG_NAME, file, e);
+    }
+  }
+
+  private static void sealJournal(File journalFile, File sealedJournalFile) {
+    if (!journalFile.exists()) {
+      return;
+    }
+    try {
+      Files.move(journalFile.toPath(), sealedJournalFile.toPath());
+    } catch (IOException e) {
+      log.error("{} could not seal journal {}:", Constants.LOG_NAME, journalFile, e);
+    }
+  }
+
+  /**
+   * Deletes the sealed segments up to the given sequence, after all snapshots were written. If a
+   * snapshot could not be written, the segments are kept and replayed with the next start.
+   */
+  private void deleteSealedJournalsAfterWrites(
+      int sealedSequence, List<CompletableFuture<Boolean>> snapshotWrites) {
+    CompletableFuture.allOf(snapshotWrites.toArray(CompletableFuture[]::new))
+        .thenRun(
+            () -> {
+              if (snapshotWrites.stream().allMatch(written -> written.join())) {
+                SavedDataWriter.execute(() -> deleteSealedJournals(sealedSequence));
+              } else {
+                log.warn(
+                    "{} keeping journal {} up to {}, because not all saved data were written!",
+                    Constants.LOG_NAME,
+                    getJournalFile(),
+                    sealedSequence);
+              }
+            });
+  }
+
+  private void deleteSealedJournals(int sealedSequence) {
+    for (Map.Entry<Integer, File> sealedFile : getSealedJournalFiles().entrySet()) {
+      if (sealedFile.getKey() <= sealedSequence) {
+        try {
+          Files.deleteIfExists(sealedFile.getValue().toPath());
+        } catch (IOException e) {
+          log.error(
+              "{} could not delete journal {}:", Constants.LOG_NAME, sealedFile.getValue(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Counters of the written batches. Flush time covers the append and sync of a batch, commit
+   * latency the time from the first recorded change of a batch until it was synced.
+   */
+  public record Statistics(
+      long batches,
+      long entries,
+      int maxBatchSize,
+      long averageFlushMicros,
+      long maxFlushMicros,
+      long averageCommitLatencyMicros) {
+
+    public long averageBatchSize() {
+      return batches > 0 ? entries / batches : 0;
+    }
+  }
+}
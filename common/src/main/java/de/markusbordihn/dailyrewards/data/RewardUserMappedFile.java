@@ -0,0 +1,443 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.Constants;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Memory-mapped record file with a fixed-width slot per player. The slot is selected by the UUID
+ * hash with linear probing, so reading or updating a player only touches the page of its slot.
+ *
+ * <p>On open only the slot headers are scanned to build the UUID index, the encoded records are
+ * read on demand. If the file is full or a record does not fit into a slot, the file is rebuilt
+ * with more or larger slots.
+ *
+ * <p>Records are never overwritten in place. A changed record is written into a free slot with a
+ * higher sequence number and a checksum, the replaced slot is only released after the new slot was
+ * synced by {@link #force}. After a crash the valid slot with the highest sequence number wins and
+ * slots with a wrong checksum are ignored.
+ */
+public class RewardUserMappedFile {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private static final int MAGIC = 0x44524d31;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4096;
+  private static final int SLOT_HEADER_SIZE = 40;
+  private static final int LENGTH_OFFSET = 16;
+  private static final int FIRST_YEAR_MONTH_KEY_OFFSET = 20;
+  private static final int SEQUENCE_OFFSET = 24;
+  private static final int CHECKSUM_OFFSET = 32;
+  private static final int EMPTY_SLOT = 0;
+  private static final int DELETED_SLOT = -1;
+  private static final int DEFAULT_SLOT_SIZE = 1024;
+  private static final int DEFAULT_SLOT_COUNT = 1024;
+  private static final float MAX_LOAD_FACTOR = 0.75f;
+  private static final String ENTRIES_TAG = "Entries";
+
+  private final Path path;
+  private final Object2IntOpenHashMap<UUID> slotIndex = new Object2IntOpenHashMap<>();
+  private final Object2IntOpenHashMap<UUID> firstYearMonthKeys = new Object2IntOpenHashMap<>();
+  private final IntArrayList releasedSlots = new IntArrayList();
+  private FileChannel fileChannel;
+  private MappedByteBuffer buffer;
+  private int slotSize;
+  private int slotCount;
+  private long sequence;
+
+  public RewardUserMappedFile(Path path) {
+    this.path = path;
+    this.slotIndex.defaultReturnValue(-1);
+  }
+
+  public synchronized void open() throws IOException {
+    Files.createDirectories(this.path.getParent());
+    if (!Files.exists(this.path)) {
+      create(this.path, DEFAULT_SLOT_SIZE, DEFAULT_SLOT_COUNT).close();
+    }
+    this.fileChannel =
+        FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer header = this.fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+    if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+      this.fileChannel.close();
+      throw new IOException("Unsupported reward user record file " + this.path);
+    }
+    this.slotSize = header.getInt(8);
+    this.slotCount = header.getInt(12);
+    this.buffer =
+        this.fileChannel.map(
+            FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.slotSize * this.slotCount);
+
+    // Only the slot headers are read, the records are decoded on demand.
+    this.slotIndex.clear();
+    this.firstYearMonthKeys.clear();
+    this.releasedSlots.clear();
+    this.sequence = 0;
+    int invalidSlots = 0;
+    for (int slot = 0; slot < this.slotCount; slot++) {
+      int offset = getSlotOffset(slot);
+      if (this.buffer.getInt(offset + LENGTH_OFFSET) <= 0) {
+        continue;
+      }
+      if (!isValidSlot(offset)) {
+        // Incomplete write before a crash, the slot is reused by the next write.
+        this.buffer.putInt(offset + LENGTH_OFFSET, DELETED_SLOT);
+        invalidSlots++;
+        continue;
+      }
+      UUID uuid = new UUID(this.buffer.getLong(offset), this.buffer.getLong(offset + 8));
+      long slotSequence = this.buffer.getLong(offset + SEQUENCE_OFFSET);
+      this.sequence = Math.max(this.sequence, slotSequence);
+
+      // A replaced slot could still exist, if the file was not synced after the last write.
+      int existingSlot = this.slotIndex.getInt(uuid);
+      if (existingSlot >= 0) {
+        if (this.buffer.getLong(getSlotOffset(existingSlot) + SEQUENCE_OFFSET) > slotSequence) {
+          this.releasedSlots.add(slot);
+          continue;
+        }
+        this.releasedSlots.add(existingSlot);
+      }
+      this.slotIndex.put(uuid, slot);
+      this.firstYearMonthKeys.put(uuid, this.buffer.getInt(offset + FIRST_YEAR_MONTH_KEY_OFFSET));
+    }
+    if (invalidSlots > 0) {
+      log.warn(
+          "{} ignored {} incomplete slots in reward user record file {}!",
+          Constants.LOG_NAME,
+          invalidSlots,
+          this.path);
+    }
+    log.info(
+        "{} opened reward user record file {} with {} of {} slots used.",
+        Constants.LOG_NAME,
+        this.path,
+        this.slotIndex.size(),
+        this.slotCount);
+  }
+
+  public synchronized Set<UUID> getUUIDs() {
+    return Set.copyOf(this.slotIndex.keySet());
+  }
+
+  public synchronized boolean contains(UUID uuid) {
+    return this.slotIndex.containsKey(uuid);
+  }
+
+  /** Returns the players with at least one month before the given year-month key. */
+  public synchronized List<UUID> getUUIDsWithMonthsBefore(int yearMonthKey) {
+    List<UUID> uuids = new ArrayList<>();
+    for (Object2IntMap.Entry<UUID> entry : this.firstYearMonthKeys.object2IntEntrySet()) {
+      if (entry.getIntValue() < yearMonthKey) {
+        uuids.add(entry.getKey());
+      }
+    }
+    return uuids;
+  }
+
+  /** Reads the encoded record of the player or returns null, if there is no record. */
+  public synchronized List<CompoundTag> read(UUID uuid) {
+    int slot = this.slotIndex.getInt(uuid);
+    if (slot < 0) {
+      return null;
+    }
+    try {
+      ListTag entriesTag =
+          NbtIo.read(new DataInputStream(new ByteArrayInputStream(readSlotData(slot))))
+              .getList(ENTRIES_TAG, 10);
+      List<CompoundTag> rewardUserTags = new ArrayList<>(entriesTag.size());
+      for (int i = 0; i < entriesTag.size(); ++i) {
+        rewardUserTags.add(entriesTag.getCompound(i));
+      }
+      return rewardUserTags;
+    } catch (IOException e) {
+      log.error("{} unable to read reward user record {}:", Constants.LOG_NAME, uuid, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the record into a free slot. The previous slot of the player is kept until the next
+   * {@link #force}, so that a crash during the write never loses the last synced record.
+   */
+  public synchronized void write(UUID uuid, List<CompoundTag> rewardUserTags) throws IOException {
+    if (rewardUserTags.isEmpty()) {
+      remove(uuid);
+      return;
+    }
+    byte[] data = encode(rewardUserTags);
+    if (data.length > this.slotSize - SLOT_HEADER_SIZE) {
+      int newSlotSize = this.slotSize;
+      while (data.length > newSlotSize - SLOT_HEADER_SIZE) {
+        newSlotSize *= 2;
+      }
+      rebuild(newSlotSize, this.slotCount);
+    }
+    if (this.slotIndex.size() + this.releasedSlots.size() + 1
+        > this.slotCount * MAX_LOAD_FACTOR) {
+      rebuild(this.slotSize, this.slotCount * 2);
+    }
+
+    int firstYearMonthKey = Integer.MAX_VALUE;
+    for (CompoundTag rewardUserTag : rewardUserTags) {
+      firstYearMonthKey =
+          Math.min(
+              firstYearMonthKey,
+              RewardUserShard.getYearMonthKeyFromKeyId(
+                  rewardUserTag.getString(RewardUserShard.YEAR_MONTH_USER_TAG)));
+    }
+    int slot = findFreeSlot(uuid);
+    writeSlot(this.buffer, getSlotOffset(slot), uuid, data, firstYearMonthKey, ++this.sequence);
+    int previousSlot = this.slotIndex.put(uuid, slot);
+    if (previousSlot >= 0) {
+      this.releasedSlots.add(previousSlot);
+    }
+    this.firstYearMonthKeys.put(uuid, firstYearMonthKey);
+  }
+
+  public synchronized void remove(UUID uuid) {
+    int slot = this.slotIndex.removeInt(uuid);
+    this.firstYearMonthKeys.removeInt(uuid);
+    if (slot >= 0) {
+      this.buffer.putInt(getSlotOffset(slot) + LENGTH_OFFSET, DELETED_SLOT);
+    }
+
+    // Older slots of the player must not be restored after a crash.
+    for (int i = this.releasedSlots.size() - 1; i >= 0; i--) {
+      int offset = getSlotOffset(this.releasedSlots.getInt(i));
+      if (this.buffer.getLong(offset) == uuid.getMostSignificantBits()
+          && this.buffer.getLong(offset + 8) == uuid.getLeastSignificantBits()) {
+        this.buffer.putInt(offset + LENGTH_OFFSET, DELETED_SLOT);
+        this.releasedSlots.removeInt(i);
+      }
+    }
+  }
+
+  /**
+   * Syncs the changed slots to the disk and releases the replaced slots afterwards. Returns false,
+   * if the slots could not be synced.
+   */
+  public synchronized boolean force() {
+    if (this.buffer == null) {
+      return true;
+    }
+    try {
+      this.buffer.force();
+    } catch (UncheckedIOException e) {
+      log.error("{} unable to sync {}:", Constants.LOG_NAME, this.path, e);
+      return false;
+    }
+    for (int i = 0; i < this.releasedSlots.size(); i++) {
+      this.buffer.putInt(getSlotOffset(this.releasedSlots.getInt(i)) + LENGTH_OFFSET, DELETED_SLOT);
+    }
+    this.releasedSlots.clear();
+    return true;
+  }
+
+  public synchronized void close() {
+    // The second sync persists the released slots, so they are not scanned again on the next open.
+    if (force()) {
+      force();
+    }
+    try {
+      if (this.fileChannel != null) {
+        this.fileChannel.close();
+      }
+    } catch (IOException e) {
+      log.error("{} unable to close {}:", Constants.LOG_NAME, this.path, e);
+    }
+    this.fileChannel = null;
+    this.buffer = null;
+  }
+
+  private int findFreeSlot(UUID uuid) {
+    int hash = uuid.hashCode();
+    int slot = (hash ^ (hash >>> 16)) & (this.slotCount - 1);
+    while (this.buffer.getInt(getSlotOffset(slot) + LENGTH_OFFSET) > 0) {
+      slot = (slot + 1) & (this.slotCount - 1);
+    }
+    return slot;
+  }
+
+  private int getSlotOffset(int slot) {
+    return HEADER_SIZE + slot * this.slotSize;
+  }
+
+  private byte[] readSlotData(int slot) {
+    int offset = getSlotOffset(slot);
+    byte[] data = new byte[this.buffer.getInt(offset + LENGTH_OFFSET)];
+    this.buffer.get(offset + SLOT_HEADER_SIZE, data);
+    return data;
+  }
+
+  private boolean isValidSlot(int offset) {
+    int length = this.buffer.getInt(offset + LENGTH_OFFSET);
+    if (length > this.slotSize - SLOT_HEADER_SIZE) {
+      return false;
+    }
+    byte[] data = new byte[length];
+    this.buffer.get(offset + SLOT_HEADER_SIZE, data);
+    return getChecksum(data) == this.buffer.getInt(offset + CHECKSUM_OFFSET);
+  }
+
+  /** Rebuilds the file with the given slot size and count and replaces the current file. */
+  private void rebuild(int newSlotSize, int newSlotCount) throws IOException {
+    List<SlotEntry> slotEntries = new ArrayList<>(this.slotIndex.size());
+    for (Object2IntMap.Entry<UUID> entry : this.slotIndex.object2IntEntrySet()) {
+      slotEntries.add(
+          new SlotEntry(
+              entry.getKey(),
+              readSlotData(entry.getIntValue()),
+              this.firstYearMonthKeys.getInt(entry.getKey())));
+    }
+    replaceFile(newSlotSize, newSlotCount, slotEntries);
+  }
+
+  /** Writes the entries into a new file, which atomically replaces the current file. */
+  private void replaceFile(int newSlotSize, int newSlotCount, List<SlotEntry> slotEntries)
+      throws IOException {
+    if (HEADER_SIZE + (long) newSlotSize * newSlotCount > Integer.MAX_VALUE) {
+      throw new IOException("Reward user record file " + this.path + " is too large!");
+    }
+    log.info(
+        "{} rebuilding reward user record file {} with {} slots of {} bytes ...",
+        Constants.LOG_NAME,
+        this.path,
+        newSlotCount,
+        newSlotSize);
+    Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+    try (FileChannel tempChannel = create(tempPath, newSlotSize, newSlotCount)) {
+      MappedByteBuffer tempBuffer =
+          tempChannel.map(
+              FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newSlotSize * newSlotCount);
+      for (SlotEntry slotEntry : slotEntries) {
+        int hash = slotEntry.uuid().hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (newSlotCount - 1);
+        while (tempBuffer.getInt(HEADER_SIZE + slot * newSlotSize + LENGTH_OFFSET) > 0) {
+          slot = (slot + 1) & (newSlotCount - 1);
+        }
+        writeSlot(
+            tempBuffer,
+            HEADER_SIZE + slot * newSlotSize,
+            slotEntry.uuid(),
+            slotEntry.data(),
+            slotEntry.firstYearMonthKey(),
+            0);
+      }
+      tempBuffer.force();
+    }
+
+    close();
+    try {
+      Files.move(
+          tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING);
+    }
+    open();
+    if (this.slotIndex.size() != slotEntries.size()) {
+      throw new IOException("Unable to rebuild reward user record file " + this.path);
+    }
+  }
+
+  private static FileChannel create(Path path, int slotSize, int slotCount) throws IOException {
+    FileChannel fileChannel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    MappedByteBuffer header = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    header.putInt(0, MAGIC);
+    header.putInt(4, VERSION);
+    header.putInt(8, slotSize);
+    header.putInt(12, slotCount);
+    header.force();
+
+    // Extend the file to the full size, unused slots are read as empty.
+    fileChannel.write(
+        ByteBuffer.wrap(new byte[] {EMPTY_SLOT}), HEADER_SIZE + (long) slotSize * slotCount - 1);
+    return fileChannel;
+  }
+
+  /** Writes the slot, the length is written last because it marks the slot as used. */
+  private static void writeSlot(
+      MappedByteBuffer buffer,
+      int offset,
+      UUID uuid,
+      byte[] data,
+      int firstYearMonthKey,
+      long sequence) {
+    buffer.putLong(offset, uuid.getMostSignificantBits());
+    buffer.putLong(offset + 8, uuid.getLeastSignificantBits());
+    buffer.putInt(offset + FIRST_YEAR_MONTH_KEY_OFFSET, firstYearMonthKey);
+    buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+    buffer.putInt(offset + CHECKSUM_OFFSET, getChecksum(data));
+    buffer.put(offset + SLOT_HEADER_SIZE, data);
+    buffer.putInt(offset + LENGTH_OFFSET, data.length);
+  }
+
+  private static int getChecksum(byte[] data) {
+    CRC32 checksum = new CRC32();
+    checksum.update(data);
+    return (int) checksum.getValue();
+  }
+
+  private static byte[] encode(List<CompoundTag> rewardUserTags) throws IOException {
+    CompoundTag compoundTag = new CompoundTag();
+    ListTag entriesTag = new ListTag();
+    entriesTag.addAll(rewardUserTags);
+    compoundTag.put(ENTRIES_TAG, entriesTag);
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    NbtIo.write(compoundTag, new DataOutputStream(byteArrayOutputStream));
+    return byteArrayOutputStream.toByteArray();
+  }
+
+  private record SlotEntry(UUID uuid, byte[] data, int firstYearMonthKey) {}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import net.minecraft.nbt.CompoundTag;
+
+/**
+ * Reward user shard which is backed by a {@link RewardUserMappedFile} instead of a NBT file.
+ * Records are read from the mapped file on first access and only changed records are written back
+ * on save.
+ */
+public class RewardUserMappedShard extends RewardUserShard {
+
+  private final RewardUserMappedFile mappedFile;
+  private final Set<UUID> changedUUIDs = ConcurrentHashMap.newKeySet();
+
+  public RewardUserMappedShard(String fileId, String rewardsTag, RewardUserMappedFile mappedFile) {
+    super(fileId, rewardsTag);
+    this.mappedFile = mappedFile;
+  }
+
+  @Override
+  public Set<UUID> getRewardUserUUIDs() {
+    Set<UUID> uuids = super.getRewardUserUUIDs();
+    for (UUID uuid : this.mappedFile.getUUIDs()) {
+      if (!this.changedUUIDs.contains(uuid)) {
+        uuids.add(uuid);
+      }
+    }
+    return uuids;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return getRewardUserUUIDs().isEmpty();
+  }
+
+  @Override
+  public synchronized boolean unloadRewardUserRecord(UUID uuid) {
+    boolean unloaded = super.unloadRewardUserRecord(uuid);
+
+    // Unchanged records are already stored in the mapped file.
+    if (unloaded && !this.changedUUIDs.contains(uuid)) {
+      removeUnloadedRewardUserTags(uuid);
+    }
+    return unloaded;
+  }
+
+  @Override
+  public synchronized List<CompoundTag> getEncodedRewardUserRecord(UUID uuid) {
+    if (isLoaded(uuid) || this.changedUUIDs.contains(uuid)) {
+      return super.getEncodedRewardUserRecord(uuid);
+    }
+    List<CompoundTag> rewardUserTags = this.mappedFile.read(uuid);
+    return rewardUserTags != null ? rewardUserTags : List.of();
+  }
+
+  @Override
+  protected Set<UUID> getRewardUserUUIDsWithMonthsBefore(int yearMonthKey) {
+    // Only records with closed months need to be read from the mapped file.
+    Set<UUID> uuids = super.getRewardUserUUIDs();
+    for (UUID uuid : this.mappedFile.getUUIDsWithMonthsBefore(yearMonthKey)) {
+      if (!this.changedUUIDs.contains(uuid)) {
+        uuids.add(uuid);
+      }
+    }
+    return uuids;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    this.changedUUIDs.addAll(this.mappedFile.getUUIDs());
+  }
+
+  @Override
+  public void save(File file) {
+    if (!this.isDirty() && !this.snapshotFailed) {
+      return;
+    }
+    this.snapshotFailed = false;
+    int numberOfChangedRecords = 0;
+    for (UUID uuid : List.copyOf(this.changedUUIDs)) {
+      List<CompoundTag> rewardUserTags = getEncodedRewardUserRecord(uuid);
+      this.changedUUIDs.remove(uuid);
+      try {
+        this.mappedFile.write(uuid, rewardUserTags);
+        if (!isLoaded(uuid)) {
+          removeUnloadedRewardUserTags(uuid);
+        }
+        numberOfChangedRecords++;
+      } catch (IOException e) {
+        this.changedUUIDs.add(uuid);
+        log.error("{} unable to write reward user record {}:", Constants.LOG_NAME, uuid, e);
+      }
+    }
+    log.info(
+        "{} saving {} changed reward user records for {} ...",
+        Constants.LOG_NAME,
+        numberOfChangedRecords,
+        this.getFileId());
+
+    // Failed records are written again with the next save.
+    boolean recordsWritten = this.changedUUIDs.isEmpty();
+    CompletableFuture<Boolean> written =
+        SavedDataWriter.submit(this.mappedFile::force)
+            .thenApply(forced -> forced && recordsWritten);
+    this.setDirty(!recordsWritten);
+    notifySaveListener(written);
+  }
+
+  @Override
+  public CompoundTag save(CompoundTag compoundTag) {
+    // Records are stored in the mapped file, see save(File).
+    return compoundTag;
+  }
+
+  public void close() {
+    this.mappedFile.close();
+  }
+
+  @Override
+  protected boolean hasUnloadedRewardUserRecords() {
+    return true;
+  }
+
+  @Override
+  protected List<CompoundTag> readRewardUserTags(UUID uuid) {
+    List<CompoundTag> rewardUserTags = super.readRewardUserTags(uuid);
+    if (rewardUserTags != null || this.changedUUIDs.contains(uuid)) {
+      return rewardUserTags;
+    }
+    return this.mappedFile.read(uuid);
+  }
+
+  @Override
+  protected void markChanged(UUID uuid) {
+    this.changedUUIDs.add(uuid);
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.item.ModItems;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.item.ItemStack;
+
+public class RewardUserMonth {
+
+  private List<ItemStack> rewardItems;
+  private CompoundTag encodedRewardItems;
+  private Function<CompoundTag, List<ItemStack>> rewardItemsDecoder;
+  private int rewardedMask = 0;
+  private int claimedMask = 0;
+  private int rewardedDays = 0;
+  private int lastRewardedDay = 0;
+  private int onlineTicksDay = 0;
+  private int onlineTicks = 0;
+
+  /**
+   * Returns the reward items of the month. Encoded items are only decoded on first access, which
+   * is usually the case if the player opens the rewards menu.
+   */
+  public List<ItemStack> getRewardItems() {
+    if (this.rewardItems == null) {
+      this.rewardItems =
+          this.encodedRewardItems != null
+              ? this.rewardItemsDecoder.apply(this.encodedRewardItems)
+              : new ArrayList<>();
+      this.encodedRewardItems = null;
+      this.rewardItemsDecoder = null;
+    }
+    return this.rewardItems;
+  }
+
+  public boolean hasRewardItems() {
+    return this.rewardedMask != 0 || this.rewardItems != null && !this.rewardItems.isEmpty();
+  }
+
+  public void setRewardItems(List<ItemStack> rewardItems) {
+    this.rewardItems = rewardItems;
+    this.encodedRewardItems = null;
+    this.rewardItemsDecoder = null;
+    updateRewardMasks();
+  }
+
+  /** Keeps the encoded reward items with their day masks, until the items are accessed. */
+  public void setEncodedRewardItems(
+      CompoundTag encodedRewardItems,
+      Function<CompoundTag, List<ItemStack>> rewardItemsDecoder,
+      int rewardedMask,
+      int claimedMask) {
+    this.rewardItems = null;
+    this.encodedRewardItems = encodedRewardItems;
+    this.rewardItemsDecoder = rewardItemsDecoder;
+    this.rewardedMask = rewardedMask;
+    this.claimedMask = claimedMask;
+  }
+
+  /** Encoded reward items or null, if the reward items were already decoded. */
+  public CompoundTag getEncodedRewardItems() {
+    return this.encodedRewardItems;
+  }
+
+  /** Updates the day masks, needs to be called after the reward items were modified. */
+  public void updateRewardMasks() {
+    int rewarded = 0;
+    int claimed = 0;
+    if (this.rewardItems != null) {
+      for (int day = 0; day < this.rewardItems.size() && day < Integer.SIZE; day++) {
+        ItemStack itemStack = this.rewardItems.get(day);
+        if (!itemStack.isEmpty()) {
+          rewarded |= 1 << day;
+          if (itemStack.is(ModItems.TAKEN_REWARD.get())) {
+            claimed |= 1 << day;
+          }
+        }
+      }
+    }
+    this.rewardedMask = rewarded;
+    this.claimedMask = claimed;
+  }
+
+  /** Bit mask of the days with a reward item, with bit 0 for the first reward. */
+  public int getRewardedMask() {
+    return this.rewardedMask;
+  }
+
+  /** Bit mask of the days with an already claimed reward, with bit 0 for the first reward. */
+  public int getClaimedMask() {
+    return this.claimedMask;
+  }
+
+  public boolean hasUnclaimedRewards() {
+    return (this.rewardedMask & ~this.claimedMask) != 0;
+  }
+
+  public int getRewardedDays() {
+    return this.rewardedDays;
+  }
+
+  public void setRewardedDays(int rewardedDays) {
+    this.rewardedDays = rewardedDays;
+  }
+
+  /** Last rewarded day as epoch day or 0, if the player was not rewarded yet. */
+  public int getLastRewardedDay() {
+    return this.lastRewardedDay;
+  }
+
+  public void setLastRewardedDay(int lastRewardedDay) {
+    this.lastRewardedDay = lastRewardedDay;
+  }
+
+  /** Epoch day of the accumulated online ticks or 0, if there are no online ticks. */
+  public int getOnlineTicksDay() {
+    return this.onlineTicksDay;
+  }
+
+  public int getOnlineTicks() {
+    return this.onlineTicks;
+  }
+
+  public int getOnlineTicks(int epochDay) {
+    return this.onlineTicksDay == epochDay ? this.onlineTicks : 0;
+  }
+
+  public void setOnlineTicks(int epochDay, int onlineTicks) {
+    this.onlineTicksDay = epochDay;
+    this.onlineTicks = onlineTicks;
+  }
+
+  public int addOnlineTicks(int epochDay, int ticks) {
+    if (this.onlineTicksDay != epochDay) {
+      this.onlineTicksDay = epochDay;
+      this.onlineTicks = 0;
+    }
+    this.onlineTicks = (int) Math.min(Integer.MAX_VALUE, (long) this.onlineTicks + ticks);
+    return this.onlineTicks;
+  }
+}
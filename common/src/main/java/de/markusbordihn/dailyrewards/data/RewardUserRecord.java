@@ -0,0 +1,109 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.util.List;
+import java.util.UUID;
+import net.minecraft.nbt.CompoundTag;
+
+/**
+ * Reward state of a single player, indexed by an integer year-month key. Looking up the state for
+ * a player and month does not allocate any temporary key objects.
+ */
+public class RewardUserRecord {
+
+  private final UUID uuid;
+  private final Int2ObjectOpenHashMap<RewardUserMonth> rewardMonths =
+      new Int2ObjectOpenHashMap<>(2);
+  private List<CompoundTag> cachedTags;
+
+  public RewardUserRecord(UUID uuid) {
+    this.uuid = uuid;
+  }
+
+  public static int getYearMonthKey(int year, int month) {
+    return year * 100 + month;
+  }
+
+  public static int getYearFromKey(int yearMonthKey) {
+    return yearMonthKey / 100;
+  }
+
+  public static int getMonthFromKey(int yearMonthKey) {
+    return yearMonthKey % 100;
+  }
+
+  public UUID getUUID() {
+    return this.uuid;
+  }
+
+  public synchronized RewardUserMonth getRewardMonth(int yearMonthKey) {
+    return this.rewardMonths.get(yearMonthKey);
+  }
+
+  public synchronized RewardUserMonth getOrCreateRewardMonth(int yearMonthKey) {
+    RewardUserMonth rewardMonth = this.rewardMonths.get(yearMonthKey);
+    if (rewardMonth == null) {
+      rewardMonth = new RewardUserMonth();
+      this.rewardMonths.put(yearMonthKey, rewardMonth);
+      this.cachedTags = null;
+    }
+    return rewardMonth;
+  }
+
+  public synchronized void putRewardMonth(int yearMonthKey, RewardUserMonth rewardMonth) {
+    this.rewardMonths.put(yearMonthKey, rewardMonth);
+    this.cachedTags = null;
+  }
+
+  public synchronized RewardUserMonth removeRewardMonth(int yearMonthKey) {
+    RewardUserMonth rewardMonth = this.rewardMonths.remove(yearMonthKey);
+    if (rewardMonth != null) {
+      this.cachedTags = null;
+    }
+    return rewardMonth;
+  }
+
+  public synchronized int[] getYearMonthKeys() {
+    return this.rewardMonths.keySet().toIntArray();
+  }
+
+  public synchronized int size() {
+    return this.rewardMonths.size();
+  }
+
+  public synchronized boolean isEmpty() {
+    return this.rewardMonths.isEmpty();
+  }
+
+  /** Encoded tags from the last save or null, if the record was changed since then. */
+  public synchronized List<CompoundTag> getCachedTags() {
+    return this.cachedTags;
+  }
+
+  public synchronized void setCachedTags(List<CompoundTag> cachedTags) {
+    this.cachedTags = cachedTags;
+  }
+
+  public synchronized void setDirty() {
+    this.cachedTags = null;
+  }
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.Constants;
+import de.markusbordihn.dailyrewards.rewards.Rewards;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.world.level.saveddata.SavedData;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+public class RewardUserShard extends SavedData {
+
+  public static final String ITEMS_TAG = "RewardItems";
+  public static final String LAST_REWARDED_DAY_TAG = "LastRewardedDay";
+  public static final String LAST_REWARDED_EPOCH_DAY_TAG = "LastRewardedEpochDay";
+  public static final String ONLINE_TICKS_DAY_TAG = "OnlineTicksEpochDay";
+  public static final String ONLINE_TICKS_TAG = "OnlineTicks";
+  public static final String REWARDED_DAYS_TAG = "RewardedDays";
+  public static final String YEAR_MONTH_USER_TAG = "YearMonthUser";
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+  private final ConcurrentHashMap<UUID, RewardUserRecord> rewardUserRecords =
+      new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<UUID, List<CompoundTag>> unloadedRewardUserTags =
+      new ConcurrentHashMap<>();
+  private final String fileId;
+  private final String rewardsTag;
+  private Consumer<CompletableFuture<Boolean>> saveListener;
+  protected volatile boolean snapshotFailed = false;
+
+  public RewardUserShard(String fileId, String rewardsTag) {
+    this.fileId = fileId;
+    this.rewardsTag = rewardsTag;
+  }
+
+  public static String getKeyId(int year, int month, UUID uuid) {
+    return year + "-" + month + ":" + uuid.toString();
+  }
+
+  public static UUID getUUIDfromKeyId(String key) {
+    if (key != null && key.contains(":")) {
+      String[] keyParts = key.split(":");
+      if (keyParts.length == 2) {
+        return UUID.fromString(keyParts[1]);
+      }
+    }
+    return null;
+  }
+
+  public static int getYearMonthKeyFromKeyId(String key) {
+    if (key != null && key.contains(":")) {
+      String[] yearMonthParts = key.substring(0, key.indexOf(':')).split("-");
+      if (yearMonthParts.length == 2) {
+        try {
+          return RewardUserRecord.getYearMonthKey(
+              Integer.parseInt(yearMonthParts[0]), Integer.parseInt(yearMonthParts[1]));
+        } catch (NumberFormatException e) {
+          log.error("{} Invalid year-month in reward key {}!", Constants.LOG_NAME, key);
+        }
+      }
+    }
+    return 0;
+  }
+
+  public static RewardUserShard load(CompoundTag compoundTag, String fileId, String rewardsTag) {
+    return load(compoundTag, fileId, rewardsTag, false);
+  }
+
+  /**
+   * Loads the shard. With lazy loading only the raw tags are indexed by player and the records are
+   * decoded on first access, e.g. when the player joins or an admin command targets the player.
+   */
+  public static RewardUserShard load(
+      CompoundTag compoundTag, String fileId, String rewardsTag, boolean lazy) {
+    RewardUserShard shard = new RewardUserShard(fileId, rewardsTag);
+    log.debug("{} loading reward user data shard {} ...", Constants.LOG_NAME, fileId);
+
+    // Restoring rewards items per year-month:uuid
+    int numberOfEntries = 0;
+    if (compoundTag.contains(rewardsTag)) {
+      ListTag listTag = compoundTag.getList(rewardsTag, 10);
+      for (int i = 0; i < listTag.size(); ++i) {
+        CompoundTag rewardUserTag = listTag.getCompound(i);
+
+        // Validate reward key.
+        String rewardKey = rewardUserTag.getString(YEAR_MONTH_USER_TAG);
+        UUID uuid = getUUIDfromKeyId(rewardKey);
+        int yearMonthKey = getYearMonthKeyFromKeyId(rewardKey);
+        if (uuid == null || yearMonthKey == 0) {
+          log.error("{} Ignoring invalid reward key {}!", Constants.LOG_NAME, rewardKey);
+          continue;
+        }
+
+        if (lazy) {
+          shard.addRewardUserTag(uuid, rewardUserTag);
+        } else {
+          decodeRewardUserTag(
+              rewardUserTag,
+              yearMonthKey,
+              shard.rewardUserRecords.computeIfAbsent(uuid, RewardUserRecord::new),
+              rewardsTag);
+        }
+        numberOfEntries++;
+      }
+    }
+    log.debug(
+        "{} Loaded {} reward user entries from shard {}{}",
+        Constants.LOG_NAME,
+        numberOfEntries,
+        fileId,
+        lazy ? " (lazy)" : "");
+
+    return shard;
+  }
+
+  /** Decodes a single year-month entry and returns false, if the entry needed corrections. */
+  private static boolean decodeRewardUserTag(
+      CompoundTag rewardUserTag,
+      int yearMonthKey,
+      RewardUserRecord rewardUserRecord,
+      String rewardsTag) {
+    boolean valid = true;
+
+    // Get Reward key, days and last rewarded day.
+    String rewardKey = rewardUserTag.getString(YEAR_MONTH_USER_TAG);
+    int rewardedDays = rewardUserTag.getInt(REWARDED_DAYS_TAG);
+    int lastRewardedDay =
+        rewardUserTag.contains(LAST_REWARDED_EPOCH_DAY_TAG)
+            ? rewardUserTag.getInt(LAST_REWARDED_EPOCH_DAY_TAG)
+            : Rewards.getEpochDay(rewardUserTag.getString(LAST_REWARDED_DAY_TAG));
+
+    // Validate totally rewarded days and last rewarded day for the month.
+    int itemCount = RewardUserItemCodec.getItemCount(rewardUserTag);
+    if (rewardedDays > itemCount) {
+      log.error(
+          "{} Invalid rewarded days {} for {}! Resetting to {}.",
+          Constants.LOG_NAME,
+          rewardedDays,
+          rewardKey,
+          itemCount);
+      rewardedDays = itemCount;
+      valid = false;
+    }
+    if (rewardedDays == 0 && lastRewardedDay != 0) {
+      log.error(
+          "{} Invalid last rewarded day {} for {}! Resetting to empty.",
+          Constants.LOG_NAME,
+          Rewards.getYearMonthDay(lastRewardedDay),
+          rewardKey);
+      lastRewardedDay = 0;
+      valid = false;
+    }
+
+    // Restoring last rewarded day and totally rewarded days for the month.
+    RewardUserMonth rewardMonth = rewardUserRecord.getOrCreateRewardMonth(yearMonthKey);
+    // Reward items are decoded on first access, the day masks are enough for most checks.
+    rewardMonth.setEncodedRewardItems(
+        rewardUserTag,
+        encodedRewardItems ->
+            RewardUserItemCodec.decode(encodedRewardItems, rewardsTag, yearMonthKey, rewardKey),
+        RewardUserItemCodec.getRewardedMask(rewardUserTag),
+        RewardUserItemCodec.getClaimedMask(rewardUserTag));
+    rewardMonth.setRewardedDays(rewardedDays);
+    rewardMonth.setLastRewardedDay(lastRewardedDay);
+    if (rewardUserTag.contains(ONLINE_TICKS_DAY_TAG)) {
+      rewardMonth.setOnlineTicks(
+          rewardUserTag.getInt(ONLINE_TICKS_DAY_TAG), rewardUserTag.getInt(ONLINE_TICKS_TAG));
+    }
+    return valid;
+  }
+
+  public String getFileId() {
+    return this.fileId;
+  }
+
+  /**
+   * Listener which is called after a snapshot of the shard was queued for writing, with a future
+   * which completes with true after the snapshot was written.
+   */
+  public void setSaveListener(Consumer<CompletableFuture<Boolean>> saveListener) {
+    this.saveListener = saveListener;
+  }
+
+  public boolean isEmpty() {
+    return this.rewardUserRecords.isEmpty() && this.unloadedRewardUserTags.isEmpty();
+  }
+
+  public RewardUserRecord getRewardUserRecord(UUID uuid) {
+    RewardUserRecord rewardUserRecord = this.rewardUserRecords.get(uuid);
+    return rewardUserRecord != null || !hasUnloadedRewardUserRecords()
+        ? rewardUserRecord
+        : loadRewardUserRecord(uuid);
+  }
+
+  public RewardUserRecord getOrCreateRewardUserRecord(UUID uuid) {
+    RewardUserRecord rewardUserRecord = getRewardUserRecord(uuid);
+    return rewardUserRecord != null
+        ? rewardUserRecord
+        : this.rewardUserRecords.computeIfAbsent(uuid, RewardUserRecord::new);
+  }
+
+  /** Returns the loaded records, use {@link #getRewardUserUUIDs()} to include unloaded ones. */
+  public Collection<RewardUserRecord> getRewardUserRecords() {
+    return this.rewardUserRecords.values();
+  }
+
+  public Set<UUID> getRewardUserUUIDs() {
+    Set<UUID> uuids = new HashSet<>(this.rewardUserRecords.keySet());
+    uuids.addAll(this.unloadedRewardUserTags.keySet());
+    return uuids;
+  }
+
+  public int size() {
+    return getRewardUserUUIDs().size();
+  }
+
+  public boolean isLoaded(UUID uuid) {
+    return this.rewardUserRecords.containsKey(uuid);
+  }
+
+  public void addRewardUserTag(UUID uuid, CompoundTag rewardUserTag) {
+    this.unloadedRewardUserTags.computeIfAbsent(uuid, key -> new ArrayList<>()).add(rewardUserTag);
+    markChanged(uuid);
+  }
+
+  protected boolean hasUnloadedRewardUserRecords() {
+    return !this.unloadedRewardUserTags.isEmpty();
+  }
+
+  /** Returns the encoded tags of a not loaded record or null, if there is no such record. */
+  protected List<CompoundTag> readRewardUserTags(UUID uuid) {
+    return this.unloadedRewardUserTags.get(uuid);
+  }
+
+  protected void removeUnloadedRewardUserTags(UUID uuid) {
+    this.unloadedRewardUserTags.remove(uuid);
+  }
+
+  /** Called for every record which needs to be written with the next save. */
+  protected void markChanged(UUID uuid) {
+    // Only needed for storage backends which are writing single records.
+  }
+
+  private synchronized RewardUserRecord loadRewardUserRecord(UUID uuid) {
+    RewardUserRecord rewardUserRecord = this.rewardUserRecords.get(uuid);
+    if (rewardUserRecord != null) {
+      return rewardUserRecord;
+    }
+    List<CompoundTag> rewardUserTags = readRewardUserTags(uuid);
+    if (rewardUserTags == null) {
+      return null;
+    }
+
+    // Decode the raw tags and re-use them for saving, as long as the record is unchanged.
+    log.debug("{} loading reward user record {} from {} ...", Constants.LOG_NAME, uuid, fileId);
+    rewardUserRecord = new RewardUserRecord(uuid);
+    boolean valid = true;
+    for (CompoundTag rewardUserTag : rewardUserTags) {
+      int yearMonthKey =
+          getYearMonthKeyFromKeyId(rewardUserTag.getString(YEAR_MONTH_USER_TAG));
+      valid &= decodeRewardUserTag(rewardUserTag, yearMonthKey, rewardUserRecord, this.rewardsTag);
+    }
+    if (valid) {
+      rewardUserRecord.setCachedTags(List.copyOf(rewardUserTags));
+    }
+    this.rewardUserRecords.put(uuid, rewardUserRecord);
+    this.unloadedRewardUserTags.remove(uuid);
+    return rewardUserRecord;
+  }
+
+  /** Returns the encoded tags of the record or an empty list, if there is no record. */
+  public synchronized List<CompoundTag> getEncodedRewardUserRecord(UUID uuid) {
+    RewardUserRecord rewardUserRecord = this.rewardUserRecords.get(uuid);
+    if (rewardUserRecord == null) {
+      List<CompoundTag> rewardUserTags = this.unloadedRewardUserTags.get(uuid);
+      return rewardUserTags != null ? List.copyOf(rewardUserTags) : List.of();
+    }
+    List<CompoundTag> rewardUserTags = rewardUserRecord.getCachedTags();
+    if (rewardUserTags == null) {
+      rewardUserTags = encodeRewardUserRecord(rewardUserRecord);
+      rewardUserRecord.setCachedTags(rewardUserTags);
+    }
+    return rewardUserTags;
+  }
+
+  /** Replaces the record with the given encoded tags, e.g. while replaying the journal. */
+  public synchronized void replaceRewardUserRecord(
+      UUID uuid, List<CompoundTag> rewardUserTags, boolean lazy) {
+    this.rewardUserRecords.remove(uuid);
+    if (rewardUserTags.isEmpty()) {
+      this.unloadedRewardUserTags.remove(uuid);
+    } else {
+      this.unloadedRewardUserTags.put(uuid, new ArrayList<>(rewardUserTags));
+      if (!lazy) {
+        loadRewardUserRecord(uuid);
+      }
+    }
+    markChanged(uuid);
+    this.setDirty();
+  }
+
+  /** Unloads the record and only keeps its encoded tags, until the record is accessed again. */
+  public synchronized boolean unloadRewardUserRecord(UUID uuid) {
+    RewardUserRecord rewardUserRecord = this.rewardUserRecords.get(uuid);
+    if (rewardUserRecord == null) {
+      return false;
+    }
+    List<CompoundTag> rewardUserTags = rewardUserRecord.getCachedTags();
+    if (rewardUserTags == null) {
+      rewardUserTags = encodeRewardUserRecord(rewardUserRecord);
+    }
+    if (!rewardUserTags.isEmpty()) {
+      this.unloadedRewardUserTags.put(uuid, new ArrayList<>(rewardUserTags));
+    }
+    this.rewardUserRecords.remove(uuid);
+    return true;
+  }
+
+  /**
+   * Copies all months before the given year-month key into the target shards per year-month. The
+   * months are copied as encoded tags, without decoding them, and are kept in this shard.
+   */
+  public void copyMonthsBefore(int yearMonthKey, IntFunction<RewardUserShard> targetShards) {
+    for (UUID uuid : getRewardUserUUIDsWithMonthsBefore(yearMonthKey)) {
+      for (CompoundTag rewardUserTag : getEncodedRewardUserRecord(uuid)) {
+        int recordYearMonthKey =
+            getYearMonthKeyFromKeyId(rewardUserTag.getString(YEAR_MONTH_USER_TAG));
+        if (recordYearMonthKey < yearMonthKey) {
+          targetShards.apply(recordYearMonthKey).addRewardUserTag(uuid, rewardUserTag.copy());
+        }
+      }
+    }
+  }
+
+  /** Returns the records which could contain months before the given year-month key. */
+  protected Set<UUID> getRewardUserUUIDsWithMonthsBefore(int yearMonthKey) {
+    return getRewardUserUUIDs();
+  }
+
+  /** Removes the month from the record, e.g. after the month was archived. */
+  public synchronized void removeRewardMonth(int yearMonthKey, UUID uuid) {
+    RewardUserRecord rewardUserRecord = this.rewardUserRecords.get(uuid);
+    if (rewardUserRecord != null) {
+      if (rewardUserRecord.removeRewardMonth(yearMonthKey) == null) {
+        return;
+      }
+      if (rewardUserRecord.isEmpty()) {
+        removeRewardUserRecord(uuid);
+      } else {
+        markChanged(uuid);
+        this.setDirty();
+      }
+      return;
+    }
+
+    // Not loaded records are changed as raw tags, without decoding them.
+    List<CompoundTag> rewardUserTags = getEncodedRewardUserRecord(uuid);
+    List<CompoundTag> remainingRewardUserTags = new ArrayList<>(rewardUserTags.size());
+    for (CompoundTag rewardUserTag : rewardUserTags) {
+      if (getYearMonthKeyFromKeyId(rewardUserTag.getString(YEAR_MONTH_USER_TAG))
+          != yearMonthKey) {
+        remainingRewardUserTags.add(rewardUserTag);
+      }
+    }
+    if (remainingRewardUserTags.size() != rewardUserTags.size()) {
+      replaceRewardUserRecord(uuid, remainingRewardUserTags, true);
+    }
+  }
+
+  public void moveRewardUserRecordTo(RewardUserShard targetShard, UUID uuid) {
+    RewardUserRecord rewardUserRecord = this.rewardUserRecords.remove(uuid);
+    List<CompoundTag> rewardUserTags = this.unloadedRewardUserTags.remove(uuid);
+    if (rewardUserRecord != null) {
+      targetShard.rewardUserRecords.put(uuid, rewardUserRecord);
+    }
+    if (rewardUserTags != null) {
+      targetShard.unloadedRewardUserTags.put(uuid, rewardUserTags);
+    }
+    if (rewardUserRecord != null || rewardUserTags != null) {
+      targetShard.markChanged(uuid);
+      targetShard.setDirty();
+      markChanged(uuid);
+      this.setDirty();
+    }
+  }
+
+  public RewardUserRecord removeRewardUserRecord(UUID uuid) {
+    RewardUserRecord rewardUserRecord = this.rewardUserRecords.remove(uuid);
+    if (this.unloadedRewardUserTags.remove(uuid) != null || rewardUserRecord != null) {
+      markChanged(uuid);
+      this.setDirty();
+    }
+    return rewardUserRecord;
+  }
+
+  public void clear() {
+    this.rewardUserRecords.clear();
+    this.unloadedRewardUserTags.clear();
+    this.setDirty();
+  }
+
+  public void setDirty(UUID uuid) {
+    RewardUserRecord rewardUserRecord = this.rewardUserRecords.get(uuid);
+    if (rewardUserRecord != null) {
+      rewardUserRecord.setDirty();
+    }
+    markChanged(uuid);
+    this.setDirty();
+  }
+
+  @Override
+  public void save(File file) {
+    if (this.isDirty() || this.snapshotFailed) {
+      this.snapshotFailed = false;
+      CompletableFuture<Boolean> written =
+          SavedDataWriter.writeAsync(file, this.save(new CompoundTag()));
+      this.setDirty(false);
+      notifySaveListener(written);
+    }
+  }
+
+  /** Notifies the save listener and marks the shard for the next save, if the write failed. */
+  protected void notifySaveListener(CompletableFuture<Boolean> written) {
+    written.thenAccept(
+        success -> {
+          if (!Boolean.TRUE.equals(success)) {
+            this.snapshotFailed = true;
+          }
+        });
+    if (this.saveListener != null) {
+      this.saveListener.accept(written);
+    }
+  }
+
+  @Override
+  public CompoundTag save(CompoundTag compoundTag) {
+    if (this.isEmpty()) {
+      log.debug("{} reward user data shard {} is empty.", Constants.LOG_NAME, this.fileId);
+      return compoundTag;
+    }
+
+    // Iterate trough the stored records and only encode records which were changed.
+    int numberOfEncodedRecords = 0;
+    ListTag listTag = new ListTag();
+    compoundTag.put(this.rewardsTag, listTag);
+    for (RewardUserRecord rewardUserRecord : this.rewardUserRecords.values()) {
+      List<CompoundTag> rewardUserTags = rewardUserRecord.getCachedTags();
+      if (rewardUserTags == null) {
+        rewardUserTags = encodeRewardUserRecord(rewardUserRecord);
+        rewardUserRecord.setCachedTags(rewardUserTags);
+        numberOfEncodedRecords++;
+      }
+      listTag.addAll(rewardUserTags);
+    }
+    for (List<CompoundTag> rewardUserTags : this.unloadedRewardUserTags.values()) {
+      listTag.addAll(rewardUserTags);
+    }
+    log.info(
+        "{} saving {} reward user records ({} changed) for {} ...",
+        Constants.LOG_NAME,
+        this.rewardUserRecords.size() + this.unloadedRewardUserTags.size(),
+        numberOfEncodedRecords,
+        this.fileId);
+
+    return compoundTag;
+  }
+
+  private List<CompoundTag> encodeRewardUserRecord(RewardUserRecord rewardUserRecord) {
+    List<CompoundTag> rewardUserTags = new ArrayList<>(rewardUserRecord.size());
+    for (int yearMonthKey : rewardUserRecord.getYearMonthKeys()) {
+      RewardUserMonth rewardMonth = rewardUserRecord.getRewardMonth(yearMonthKey);
+      if (rewardMonth == null) {
+        continue;
+      }
+      CompoundTag rewardUserTag = new CompoundTag();
+
+      // Using year month uuid as key
+      rewardUserTag.putString(
+          YEAR_MONTH_USER_TAG,
+          getKeyId(
+              RewardUserRecord.getYearFromKey(yearMonthKey),
+              RewardUserRecord.getMonthFromKey(yearMonthKey),
+              rewardUserRecord.getUUID()));
+
+      // Storing rewards items per year-month:uuid, not decoded items are copied as they are.
+      if (rewardMonth.getEncodedRewardItems() != null) {
+        RewardUserItemCodec.copyEncoded(rewardMonth.getEncodedRewardItems(), rewardUserTag);
+      } else {
+        RewardUserItemCodec.encode(
+            rewardUserTag,
+            rewardMonth.getRewardItems(),
+            RewardUserItemCodec.getReferenceRewards(this.rewardsTag, yearMonthKey));
+      }
+
+      // Adding last rewarded day and totally rewarded days for the month.
+      rewardUserTag.putInt(REWARDED_DAYS_TAG, rewardMonth.getRewardedDays());
+      rewardUserTag.putInt(LAST_REWARDED_EPOCH_DAY_TAG, rewardMonth.getLastRewardedDay());
+
+      // Adding accumulated online ticks for the last online day.
+      if (rewardMonth.getOnlineTicksDay() != 0) {
+        rewardUserTag.putInt(ONLINE_TICKS_DAY_TAG, rewardMonth.getOnlineTicksDay());
+        rewardUserTag.putInt(ONLINE_TICKS_TAG, rewardMonth.getOnlineTicks());
+      }
+
+      // Storing entry
+      rewardUserTags.add(rewardUserTag);
+    }
+    return rewardUserTags;
+  }
+}
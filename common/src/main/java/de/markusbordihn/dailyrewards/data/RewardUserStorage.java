@@ -0,0 +1,1124 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import static de.markusbordihn.dailyrewards.config.ModConfigs.COMMON;
+
+import de.markusbordihn.dailyrewards.Constants;
+import de.markusbordihn.dailyrewards.rewards.RewardDate;
+import de.markusbordihn.dailyrewards.rewards.RewardItemPool;
+import de.markusbordihn.dailyrewards.rewards.Rewards;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.storage.DimensionDataStorage;
+import net.minecraft.world.level.storage.LevelResource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Storage engine for the per-player reward data, shared by the normal and the special rewards.
+ *
+ * <p>Depending on the configured {@link UserDataStorageType} the data are stored in a single file
+ * or are distributed over several shard files by the player UUID. Every shard is its own {@link
+ * net.minecraft.world.level.saveddata.SavedData}, so an autosave only rewrites the shards which
+ * have been changed since the last save.
+ */
+public abstract class RewardUserStorage {
+
+  public static final String ITEM_LIST_TAG = "ItemList";
+  public static final String ITEMS_TAG = RewardUserShard.ITEMS_TAG;
+  public static final String LAST_REWARDED_DAY_TAG = RewardUserShard.LAST_REWARDED_DAY_TAG;
+  public static final String REWARDED_DAYS_TAG = RewardUserShard.REWARDED_DAYS_TAG;
+  public static final String YEAR_MONTH_TAG = "YearMonth";
+  public static final String YEAR_MONTH_USER_TAG = RewardUserShard.YEAR_MONTH_USER_TAG;
+  public static final int DEFAULT_SHARDS = 16;
+  public static final int MAX_SHARDS = 256;
+  public static final String ARCHIVE_DIRECTORY = Constants.MOD_ID + "_archive";
+  public static final String JOURNAL_DIRECTORY = Constants.MOD_ID + "_journal";
+  private static final String ONLINE_TICKS_OPERATION = "online_ticks";
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+  private final String fileId;
+  private final String rewardsTag;
+  private RewardUserShard[] shards = new RewardUserShard[0];
+  private RewardUserArchive archive;
+  private RewardUserJournal journal;
+  private RewardUserIndex index;
+  private final Set<UUID> pendingIndexUUIDs = new LinkedHashSet<>();
+  private RewardUserSyncBackend syncBackend;
+  private final Object2LongOpenHashMap<UUID> syncVersions = new Object2LongOpenHashMap<>();
+  private final Set<UUID> pendingSyncUUIDs = new LinkedHashSet<>();
+  private final Set<UUID> readingSyncUUIDs = new HashSet<>();
+  private final Set<UUID> writingSyncUUIDs = new HashSet<>();
+  private boolean pollingSyncChanges;
+  private RewardUserShard stagingShard;
+  private UUID stagingUUID;
+  private boolean applyingSharedChange;
+  private MinecraftServer server;
+
+  protected RewardUserStorage(String fileId, String rewardsTag) {
+    this.syncVersions.defaultReturnValue(-1);
+    this.fileId = fileId;
+    this.rewardsTag = rewardsTag;
+  }
+
+  public static String getKeyId(int year, int month, UUID uuid) {
+    return RewardUserShard.getKeyId(year, month, uuid);
+  }
+
+  public static UUID getUUIDfromKeyId(String key) {
+    return RewardUserShard.getUUIDfromKeyId(key);
+  }
+
+  public static List<ItemStack> getRewardsForCurrentMonthSyncData(CompoundTag compoundTag) {
+    List<ItemStack> rewardItems = new ArrayList<>();
+    if (compoundTag.contains(ITEM_LIST_TAG)) {
+      ListTag itemListTag = compoundTag.getList(ITEM_LIST_TAG, 10);
+      for (int i = 0; i < itemListTag.size(); ++i) {
+        ItemStack itemStack = ItemStack.of(itemListTag.getCompound(i));
+        rewardItems.add(itemStack);
+      }
+    }
+    return rewardItems;
+  }
+
+  public static UserDataStorageType getStorageType() {
+    return COMMON.userDataStorageType != null
+        ? COMMON.userDataStorageType
+        : UserDataStorageType.SINGLE_FILE;
+  }
+
+  public static int getNumberOfShards() {
+    if (getStorageType() != UserDataStorageType.SHARDED) {
+      return 1;
+    }
+
+    // Round to the next power of two to allow a simple bit mask for the shard index.
+    int numberOfShards = COMMON.userDataShards > 0 ? COMMON.userDataShards : DEFAULT_SHARDS;
+    numberOfShards = Math.min(MAX_SHARDS, Integer.highestOneBit(numberOfShards - 1) << 1);
+    return Math.max(1, numberOfShards);
+  }
+
+  public String getFileId() {
+    return this.fileId;
+  }
+
+  public String getShardFileId(int shardIndex) {
+    return this.fileId + "_shard_" + String.format("%02x", shardIndex);
+  }
+
+  protected void prepareStorage(ServerLevel serverLevel) {
+    DimensionDataStorage dataStorage = serverLevel.getDataStorage();
+    UserDataStorageType storageType = getStorageType();
+    int numberOfShards = getNumberOfShards();
+
+    this.server = serverLevel.getServer();
+    Path dataPath = this.server.getWorldPath(LevelResource.ROOT).resolve("data");
+    this.archive =
+        new RewardUserArchive(dataPath.resolve(ARCHIVE_DIRECTORY), this.fileId, this.rewardsTag);
+
+    // Memory-mapped storage, existing data of the other storage types are migrated.
+    if (storageType == UserDataStorageType.MAPPED) {
+      RewardUserShard mappedShard = computeMappedShard(dataStorage, dataPath);
+      if (mappedShard != null) {
+        this.shards = new RewardUserShard[] {mappedShard};
+        migrateShardFiles(dataStorage, 0);
+        finishPrepareStorage(dataPath);
+        return;
+      }
+      storageType = UserDataStorageType.SINGLE_FILE;
+    }
+
+    // Single file storage is using the legacy file id, to stay compatible with older versions.
+    if (storageType == UserDataStorageType.SINGLE_FILE) {
+      this.shards = new RewardUserShard[] {computeShard(dataStorage, this.fileId)};
+      finishPrepareStorage(dataPath);
+      return;
+    }
+
+    log.info(
+        "{} using {} shards for reward user data {} ...",
+        Constants.LOG_NAME,
+        numberOfShards,
+        this.fileId);
+    RewardUserShard[] preparedShards = new RewardUserShard[numberOfShards];
+    for (int shardIndex = 0; shardIndex < numberOfShards; shardIndex++) {
+      preparedShards[shardIndex] = computeShard(dataStorage, getShardFileId(shardIndex));
+    }
+    this.shards = preparedShards;
+
+    // Migrate existing data from the single file and from unused shards, if needed.
+    migrateShardFiles(dataStorage, numberOfShards);
+
+    // Re-distribute records which are not stored in the expected shard.
+    for (RewardUserShard shard : preparedShards) {
+      for (UUID uuid : shard.getRewardUserUUIDs()) {
+        if (getShard(uuid) != shard) {
+          shard.moveRewardUserRecordTo(getShard(uuid), uuid);
+        }
+      }
+    }
+
+    finishPrepareStorage(dataPath);
+  }
+
+  private void finishPrepareStorage(Path dataPath) {
+    prepareJournal(dataPath.resolve(JOURNAL_DIRECTORY));
+    prepareSync();
+    prepareIndex(dataPath);
+    archiveClosedMonths();
+  }
+
+  /** Replays the changes which were not saved before the last shutdown or crash. */
+  private void prepareJournal(Path journalPath) {
+    this.journal = null;
+    if (!COMMON.userDataJournal) {
+      return;
+    }
+    RewardUserJournal rewardUserJournal =
+        new RewardUserJournal(
+            journalPath, this.fileId, uuid -> getShard(uuid).getEncodedRewardUserRecord(uuid));
+    List<CompoundTag> journalEntries = rewardUserJournal.read();
+    if (!journalEntries.isEmpty()) {
+      log.info(
+          "{} replaying {} journal entries for {} ...",
+          Constants.LOG_NAME,
+          journalEntries.size(),
+          this.fileId);
+      for (CompoundTag journalEntry : journalEntries) {
+        replayJournalEntry(journalEntry);
+      }
+    }
+    for (RewardUserShard shard : this.shards) {
+      shard.setSaveListener(rewardUserJournal::checkpoint);
+    }
+    this.journal = rewardUserJournal;
+  }
+
+  private void replayJournalEntry(CompoundTag journalEntry) {
+    String operation = journalEntry.getString(RewardUserJournal.OPERATION_TAG);
+    if (journalEntry.hasUUID(RewardUserJournal.UUID_TAG)) {
+      UUID uuid = journalEntry.getUUID(RewardUserJournal.UUID_TAG);
+      ListTag entriesTag = journalEntry.getList(RewardUserJournal.ENTRIES_TAG, 10);
+      List<CompoundTag> rewardUserTags = new ArrayList<>(entriesTag.size());
+      for (int i = 0; i < entriesTag.size(); ++i) {
+        rewardUserTags.add(entriesTag.getCompound(i));
+      }
+      getShard(uuid).replaceRewardUserRecord(uuid, rewardUserTags, COMMON.userDataLazyLoading);
+    } else if (RewardUserJournal.RESET_MONTH_OPERATION.equals(operation)) {
+      int yearMonthKey = journalEntry.getInt(YEAR_MONTH_TAG);
+      resetRewardUserDataFor(
+          RewardUserRecord.getYearFromKey(yearMonthKey),
+          RewardUserRecord.getMonthFromKey(yearMonthKey));
+    } else if (RewardUserJournal.CLEAR_ALL_OPERATION.equals(operation)) {
+      clearRewardUserData();
+    } else {
+      log.warn("{} ignoring unknown journal entry {} ...", Constants.LOG_NAME, operation);
+    }
+  }
+
+  /** Connects the shared store, if the reward data is synced between several servers. */
+  private void prepareSync() {
+    this.syncBackend = null;
+    this.syncVersions.clear();
+    this.pendingSyncUUIDs.clear();
+    this.readingSyncUUIDs.clear();
+    this.writingSyncUUIDs.clear();
+    this.pollingSyncChanges = false;
+    if (!COMMON.userDataSync) {
+      return;
+    }
+    if (COMMON.userDataSyncDirectory == null || COMMON.userDataSyncDirectory.isBlank()) {
+      log.error("{} no userDataSyncDirectory configured, sync is disabled!", Constants.LOG_NAME);
+      return;
+    }
+    try {
+      this.syncBackend =
+          new FileRewardUserSyncBackend(Path.of(COMMON.userDataSyncDirectory), this.fileId);
+      log.info(
+          "{} syncing reward user data {} with {} ...",
+          Constants.LOG_NAME,
+          this.fileId,
+          COMMON.userDataSyncDirectory);
+    } catch (IOException e) {
+      log.error(
+          "{} unable to open shared reward user data, sync is disabled:", Constants.LOG_NAME, e);
+    }
+  }
+
+  public boolean hasSharedStore() {
+    return this.syncBackend != null;
+  }
+
+  /**
+   * Reads the shared record of the player once, afterwards the local record is used as cache
+   * until it is invalidated by a change of another server. The local record is used until the
+   * shared record was read.
+   */
+  private void syncRewardUserRecord(UUID uuid) {
+    if (this.syncBackend != null
+        && this.stagingShard == null
+        && !this.syncVersions.containsKey(uuid)
+        && !this.writingSyncUUIDs.contains(uuid)) {
+      readSharedRecord(uuid);
+    }
+  }
+
+  /** Reads the shared record of the player again, e.g. after the player joined this server. */
+  public void refreshRewardUserRecord(UUID uuid) {
+    if (this.syncBackend != null
+        && !this.pendingSyncUUIDs.contains(uuid)
+        && !this.writingSyncUUIDs.contains(uuid)) {
+      this.syncVersions.removeLong(uuid);
+      readSharedRecord(uuid);
+    }
+  }
+
+  private void readSharedRecord(UUID uuid) {
+    if (!this.readingSyncUUIDs.add(uuid)) {
+      return;
+    }
+    RewardUserSyncBackend backend = this.syncBackend;
+    backend
+        .read(uuid)
+        .whenComplete(
+            (versionedRecord, error) ->
+                this.server.execute(
+                    () -> handleSharedRecord(backend, uuid, versionedRecord, error)));
+  }
+
+  private void handleSharedRecord(
+      RewardUserSyncBackend backend,
+      UUID uuid,
+      RewardUserSyncBackend.VersionedRecord versionedRecord,
+      Throwable error) {
+    if (backend != this.syncBackend) {
+      return;
+    }
+    this.readingSyncUUIDs.remove(uuid);
+    if (error != null) {
+      log.error("{} unable to read shared reward user record {}:", Constants.LOG_NAME, uuid, error);
+      return;
+    }
+
+    // Pending writes are deciding about the version on their own.
+    if (this.writingSyncUUIDs.contains(uuid)) {
+      return;
+    }
+    if (versionedRecord == null) {
+      // Existing local records are shared with the first write.
+      this.syncVersions.put(uuid, RewardUserSyncBackend.NO_VERSION);
+      if (!getShard(uuid).getEncodedRewardUserRecord(uuid).isEmpty()) {
+        this.pendingSyncUUIDs.add(uuid);
+      }
+    } else if (versionedRecord.version() != this.syncVersions.getLong(uuid)) {
+      // The shared record wins, local changes could be based on an outdated record.
+      if (this.pendingSyncUUIDs.remove(uuid)) {
+        log.warn(
+            "{} reward user record {} was changed by another server, discarding local change.",
+            Constants.LOG_NAME,
+            uuid);
+      }
+      getShard(uuid).replaceRewardUserRecord(uuid, versionedRecord.rewardUserTags(), false);
+      this.syncVersions.put(uuid, versionedRecord.version());
+    }
+  }
+
+  /**
+   * Applies a change of the player record, which must only happen once across all servers, like a
+   * granted or claimed reward. With a shared store the change is applied to a copy of the record
+   * first, which is written with compare-and-set. The change is only applied to the local record,
+   * after the write was accepted.
+   *
+   * <p>The callback is called on the server thread with false, if the change was not applied, e.g.
+   * because another server changed the record in the meantime. The caller should check the
+   * refreshed record and retry later.
+   */
+  public void applySharedChange(UUID uuid, Runnable change, Consumer<Boolean> callback) {
+    if (this.syncBackend == null) {
+      change.run();
+      callback.accept(true);
+      return;
+    }
+    if (!this.syncVersions.containsKey(uuid)
+        || this.readingSyncUUIDs.contains(uuid)
+        || this.writingSyncUUIDs.contains(uuid)) {
+      syncRewardUserRecord(uuid);
+      callback.accept(false);
+      return;
+    }
+
+    // Apply the change to a copy of the record, without touching the local record.
+    RewardUserShard shard = new RewardUserShard(this.fileId, this.rewardsTag);
+    shard.replaceRewardUserRecord(uuid, getShard(uuid).getEncodedRewardUserRecord(uuid), false);
+    this.stagingShard = shard;
+    this.stagingUUID = uuid;
+    try {
+      change.run();
+    } finally {
+      this.stagingShard = null;
+      this.stagingUUID = null;
+    }
+
+    // Pending local changes are part of the written record.
+    boolean pending = this.pendingSyncUUIDs.remove(uuid);
+    this.writingSyncUUIDs.add(uuid);
+    RewardUserSyncBackend backend = this.syncBackend;
+    backend
+        .write(uuid, this.syncVersions.getLong(uuid), shard.getEncodedRewardUserRecord(uuid))
+        .whenComplete(
+            (newVersion, error) ->
+                this.server.execute(
+                    () -> {
+                      if (backend != this.syncBackend) {
+                        callback.accept(false);
+                        return;
+                      }
+                      boolean applied = handleSharedWrite(uuid, newVersion, error, pending);
+                      if (applied) {
+                        this.applyingSharedChange = true;
+                        try {
+                          change.run();
+                        } finally {
+                          this.applyingSharedChange = false;
+                        }
+                      }
+                      callback.accept(applied);
+                    }));
+  }
+
+  /** Writes the pending change of the player to the shared store, e.g. after the player left. */
+  public void flushRewardUserRecord(UUID uuid) {
+    if (this.syncBackend != null && this.pendingSyncUUIDs.contains(uuid)) {
+      writeSharedRecord(uuid);
+    }
+  }
+
+  /**
+   * Writes the changed records to the shared store. If another server changed a record in the
+   * meantime, the shared record wins and is read again. Rewards are not affected by this, because
+   * they are only granted and claimed after they were written, see {@link #applySharedChange}.
+   */
+  private void flushSync() {
+    if (this.syncBackend == null || this.pendingSyncUUIDs.isEmpty()) {
+      return;
+    }
+    for (UUID uuid : List.copyOf(this.pendingSyncUUIDs)) {
+      writeSharedRecord(uuid);
+    }
+  }
+
+  private void writeSharedRecord(UUID uuid) {
+    // Records are only written with a known version, the version is read first otherwise.
+    if (this.writingSyncUUIDs.contains(uuid) || !this.syncVersions.containsKey(uuid)) {
+      syncRewardUserRecord(uuid);
+      return;
+    }
+    this.pendingSyncUUIDs.remove(uuid);
+    this.writingSyncUUIDs.add(uuid);
+    RewardUserSyncBackend backend = this.syncBackend;
+    backend
+        .write(
+            uuid, this.syncVersions.getLong(uuid), getShard(uuid).getEncodedRewardUserRecord(uuid))
+        .whenComplete(
+            (newVersion, error) ->
+                this.server.execute(
+                    () -> {
+                      if (backend == this.syncBackend) {
+                        handleSharedWrite(uuid, newVersion, error, true);
+                      }
+                    }));
+  }
+
+  /** Updates the version after a write and returns true, if the write was accepted. */
+  private boolean handleSharedWrite(UUID uuid, Long newVersion, Throwable error, boolean pending) {
+    this.writingSyncUUIDs.remove(uuid);
+    if (error != null) {
+      log.error(
+          "{} unable to write shared reward user record {}:", Constants.LOG_NAME, uuid, error);
+      if (pending) {
+        this.pendingSyncUUIDs.add(uuid);
+      }
+      return false;
+    }
+    if (newVersion == RewardUserSyncBackend.NO_VERSION) {
+      log.warn(
+          "{} reward user record {} was changed by another server, reading it again.",
+          Constants.LOG_NAME,
+          uuid);
+      this.syncVersions.removeLong(uuid);
+      readSharedRecord(uuid);
+      return false;
+    }
+    this.syncVersions.put(uuid, newVersion.longValue());
+    return true;
+  }
+
+  /** Invalidates the cached records, which were changed by other servers. */
+  private void pollSyncChanges() {
+    if (this.syncBackend == null || this.pollingSyncChanges) {
+      return;
+    }
+    this.pollingSyncChanges = true;
+    RewardUserSyncBackend backend = this.syncBackend;
+    backend
+        .pollChanges()
+        .whenComplete(
+            (changes, error) ->
+                this.server.execute(
+                    () -> {
+                      if (backend != this.syncBackend) {
+                        return;
+                      }
+                      this.pollingSyncChanges = false;
+                      if (error != null) {
+                        log.error(
+                            "{} unable to poll shared reward user data changes:",
+                            Constants.LOG_NAME,
+                            error);
+                        return;
+                      }
+                      for (RewardUserSyncBackend.Change change : changes) {
+                        if (change.version() > this.syncVersions.getLong(change.uuid())
+                            && !this.pendingSyncUUIDs.contains(change.uuid())
+                            && !this.writingSyncUUIDs.contains(change.uuid())) {
+                          this.syncVersions.removeLong(change.uuid());
+                        }
+                      }
+                    }));
+  }
+
+  /** Opens the optional query index and fills it with all records, if the index is new. */
+  private void prepareIndex(Path dataPath) {
+    this.index = null;
+    if (!COMMON.userDataIndex) {
+      return;
+    }
+    String jdbcUrl =
+        COMMON
+            .userDataIndexJdbcUrl
+            .replace("{data}", dataPath.toAbsolutePath().toString())
+            .replace("{id}", this.fileId);
+    RewardUserIndex rewardUserIndex = new JdbcRewardUserIndex(jdbcUrl, this.fileId);
+    try {
+      if (rewardUserIndex.open()) {
+        log.info("{} filling new reward user index {} ...", Constants.LOG_NAME, jdbcUrl);
+        Map<UUID, List<CompoundTag>> rewardUserTags = new HashMap<>();
+        for (RewardUserShard shard : this.shards) {
+          for (UUID uuid : shard.getRewardUserUUIDs()) {
+            rewardUserTags.put(uuid, shard.getEncodedRewardUserRecord(uuid));
+          }
+        }
+        rewardUserIndex.update(() -> getIndexMonthEntries(rewardUserTags));
+      }
+    } catch (Exception e) {
+      log.error(
+          "{} unable to open reward user index {}, index is disabled:",
+          Constants.LOG_NAME,
+          jdbcUrl,
+          e);
+      rewardUserIndex.close();
+      return;
+    }
+    this.index = rewardUserIndex;
+  }
+
+  /**
+   * Builds the index months from the encoded records, without decoding them. This is called on the
+   * index thread, so only the given tags and the month rewards are read.
+   */
+  private Map<UUID, List<RewardUserIndex.MonthEntry>> getIndexMonthEntries(
+      Map<UUID, List<CompoundTag>> rewardUserTags) {
+    Map<UUID, List<RewardUserIndex.MonthEntry>> monthEntries = new HashMap<>();
+    for (Map.Entry<UUID, List<CompoundTag>> rewardUserRecord : rewardUserTags.entrySet()) {
+      List<RewardUserIndex.MonthEntry> recordMonthEntries =
+          new ArrayList<>(rewardUserRecord.getValue().size());
+      for (CompoundTag rewardUserTag : rewardUserRecord.getValue()) {
+        int yearMonthKey =
+            RewardUserShard.getYearMonthKeyFromKeyId(
+                rewardUserTag.getString(RewardUserShard.YEAR_MONTH_USER_TAG));
+        List<String> itemIds = new ArrayList<>();
+        List<Integer> itemCounts = new ArrayList<>();
+        RewardUserItemCodec.collectIndexItems(
+            rewardUserTag, this.rewardsTag, yearMonthKey, itemIds, itemCounts);
+        recordMonthEntries.add(
+            new RewardUserIndex.MonthEntry(
+                yearMonthKey,
+                rewardUserTag.getInt(RewardUserShard.REWARDED_DAYS_TAG),
+                RewardUserItemCodec.getRewardedMask(rewardUserTag),
+                RewardUserItemCodec.getClaimedMask(rewardUserTag),
+                itemIds,
+                itemCounts));
+      }
+      monthEntries.put(rewardUserRecord.getKey(), recordMonthEntries);
+    }
+    return monthEntries;
+  }
+
+  private void flushIndex() {
+    if (this.index == null || this.pendingIndexUUIDs.isEmpty()) {
+      return;
+    }
+    Map<UUID, List<CompoundTag>> rewardUserTags = new HashMap<>();
+    for (UUID uuid : this.pendingIndexUUIDs) {
+      rewardUserTags.put(uuid, getShard(uuid).getEncodedRewardUserRecord(uuid));
+    }
+    this.pendingIndexUUIDs.clear();
+    this.index.update(() -> getIndexMonthEntries(rewardUserTags));
+  }
+
+  /**
+   * Writes the journal as group commit, after the configured max. latency and passes the changed
+   * records to the query index and to the shared store.
+   */
+  public void handleServerTick(int tickCount) {
+    if (this.journal != null) {
+      this.journal.handleServerTick(tickCount, Math.max(0, COMMON.userDataJournalSyncTicks));
+    }
+    if (this.index != null && tickCount % Math.max(1, COMMON.userDataIndexSyncTicks) == 0) {
+      flushIndex();
+    }
+    if (this.syncBackend != null && tickCount % Math.max(1, COMMON.userDataSyncTicks) == 0) {
+      flushSync();
+      pollSyncChanges();
+    }
+  }
+
+  /** Players with unclaimed rewards in the month or null, if the query index is disabled. */
+  public CompletableFuture<List<UUID>> findPlayersWithUnclaimedRewards(int year, int month) {
+    if (this.index == null) {
+      return null;
+    }
+    flushIndex();
+    return this.index.findPlayersWithUnclaimedRewards(
+        RewardUserRecord.getYearMonthKey(year, month));
+  }
+
+  /** Players who got the item in the month or null, if the query index is disabled. */
+  public CompletableFuture<List<UUID>> findPlayersWithItem(int year, int month, String itemId) {
+    if (this.index == null) {
+      return null;
+    }
+    flushIndex();
+    return this.index.findPlayersWithItem(RewardUserRecord.getYearMonthKey(year, month), itemId);
+  }
+
+  /** Statistics of the journal or null, if the journal is disabled. */
+  public RewardUserJournal.Statistics getJournalStatistics() {
+    return this.journal != null ? this.journal.getStatistics() : null;
+  }
+
+  private void markDirty(UUID uuid, String operation) {
+    getShard(uuid).setDirty(uuid);
+    if (this.stagingShard != null) {
+      return;
+    }
+    if (this.journal != null) {
+      this.journal.append(uuid, operation, COMMON.userDataJournalMaxBatchSize);
+    }
+    if (this.index != null && !ONLINE_TICKS_OPERATION.equals(operation)) {
+      this.pendingIndexUUIDs.add(uuid);
+    }
+    if (this.syncBackend != null && !this.applyingSharedChange) {
+      this.pendingSyncUUIDs.add(uuid);
+    }
+  }
+
+  /**
+   * Copies all closed months into the per-month archive files and removes them from the live data
+   * after the archive was written. Months which could not be archived are kept in the live data and
+   * are archived again with the next start or month change.
+   */
+  public void archiveClosedMonths() {
+    if (this.archive == null || !COMMON.userDataArchiveClosedMonths) {
+      return;
+    }
+    int currentYearMonthKey = Rewards.getCurrentDate().yearMonthKey();
+    Int2ObjectOpenHashMap<RewardUserShard> archiveShards = new Int2ObjectOpenHashMap<>();
+    for (RewardUserShard shard : this.shards) {
+      shard.copyMonthsBefore(
+          currentYearMonthKey,
+          yearMonthKey -> archiveShards.computeIfAbsent(yearMonthKey, this.archive::createShard));
+    }
+    RewardUserShard[] archivedShards = this.shards;
+    for (Int2ObjectMap.Entry<RewardUserShard> archiveShard :
+        archiveShards.int2ObjectEntrySet()) {
+      int yearMonthKey = archiveShard.getIntKey();
+      Set<UUID> uuids = archiveShard.getValue().getRewardUserUUIDs();
+      this.archive
+          .write(yearMonthKey, archiveShard.getValue())
+          .thenAccept(
+              written ->
+                  this.server.execute(
+                      () -> removeArchivedMonth(archivedShards, yearMonthKey, uuids, written)));
+    }
+    this.archive.applyRetention(currentYearMonthKey, COMMON.userDataArchiveRetentionMonths);
+    removeReplacedRewards(
+        yearMonthKey ->
+            RewardUserArchive.isExpired(
+                yearMonthKey, currentYearMonthKey, COMMON.userDataArchiveRetentionMonths));
+  }
+
+  private void removeArchivedMonth(
+      RewardUserShard[] archivedShards, int yearMonthKey, Set<UUID> uuids, Boolean written) {
+    if (archivedShards != this.shards) {
+      return;
+    }
+    if (!Boolean.TRUE.equals(written)) {
+      log.error(
+          "{} unable to archive {}, keeping the month in the live data!",
+          Constants.LOG_NAME,
+          this.archive.getArchiveFileId(yearMonthKey));
+      return;
+    }
+    for (UUID uuid : uuids) {
+      getShard(uuid).removeRewardMonth(yearMonthKey, uuid);
+    }
+  }
+
+  /** Unloads the record of the player, e.g. after the player was offline for a while. */
+  public boolean unloadRewardUserRecord(UUID uuid) {
+    boolean unloaded = getShard(uuid).unloadRewardUserRecord(uuid);
+    if (unloaded
+        && !this.pendingSyncUUIDs.contains(uuid)
+        && !this.writingSyncUUIDs.contains(uuid)) {
+      this.syncVersions.removeLong(uuid);
+    }
+    return unloaded;
+  }
+
+  public boolean isRewardUserRecordLoaded(UUID uuid) {
+    return getShard(uuid).isLoaded(uuid);
+  }
+
+  /** Returns the live or archived month for the player, only used for read-only access. */
+  public RewardUserMonth getRewardMonthOrArchived(int year, int month, UUID uuid) {
+    RewardUserMonth rewardMonth = getRewardMonth(year, month, uuid);
+    if (rewardMonth == null && this.archive != null) {
+      rewardMonth =
+          this.archive.getRewardMonth(RewardUserRecord.getYearMonthKey(year, month), uuid);
+    }
+    return rewardMonth;
+  }
+
+  private RewardUserShard computeShard(DimensionDataStorage dataStorage, String shardFileId) {
+    return dataStorage.computeIfAbsent(
+        compoundTag ->
+            RewardUserShard.load(
+                compoundTag, shardFileId, this.rewardsTag, COMMON.userDataLazyLoading),
+        () -> new RewardUserShard(shardFileId, this.rewardsTag),
+        shardFileId);
+  }
+
+  private void migrateShardFiles(DimensionDataStorage dataStorage, int firstUnusedShardIndex) {
+    // Migrate existing data from the single file, if needed.
+    RewardUserShard legacyShard =
+        dataStorage.get(
+            compoundTag ->
+                RewardUserShard.load(
+                    compoundTag, this.fileId, this.rewardsTag, COMMON.userDataLazyLoading),
+            this.fileId);
+    if (legacyShard != null && !legacyShard.isEmpty()) {
+      migrateShard(legacyShard);
+    }
+
+    // Migrate shards which are not used anymore, e.g. after the number of shards was reduced.
+    for (int shardIndex = firstUnusedShardIndex; shardIndex < MAX_SHARDS; shardIndex++) {
+      String unusedShardFileId = getShardFileId(shardIndex);
+      RewardUserShard unusedShard =
+          dataStorage.get(
+              compoundTag ->
+                  RewardUserShard.load(
+                      compoundTag,
+                      unusedShardFileId,
+                      this.rewardsTag,
+                      COMMON.userDataLazyLoading),
+              unusedShardFileId);
+      if (unusedShard != null && !unusedShard.isEmpty()) {
+        migrateShard(unusedShard);
+      }
+    }
+  }
+
+  private RewardUserShard computeMappedShard(DimensionDataStorage dataStorage, Path dataPath) {
+    String mappedFileId = this.fileId + "_mapped";
+    RewardUserMappedFile mappedFile =
+        new RewardUserMappedFile(dataPath.resolve(mappedFileId + ".records"));
+    try {
+      mappedFile.open();
+    } catch (IOException e) {
+      log.error(
+          "{} unable to open {}, using single file storage instead:",
+          Constants.LOG_NAME,
+          mappedFileId,
+          e);
+      return null;
+    }
+
+    // Register the shard for the autosave, the records are written into the mapped file only.
+    RewardUserMappedShard mappedShard =
+        new RewardUserMappedShard(mappedFileId, this.rewardsTag, mappedFile);
+    dataStorage.set(mappedFileId, mappedShard);
+    return mappedShard;
+  }
+
+  /** Closes open file handles of the storage, after the server was stopped. */
+  public void closeStorage() {
+    // Wait for the snapshots of the final save, before the checkpointed journal is deleted.
+    if (this.journal != null) {
+      this.journal.flush();
+    }
+    SavedDataWriter.flush();
+    if (this.journal != null) {
+      this.journal.close();
+      this.journal = null;
+    }
+    for (RewardUserShard shard : this.shards) {
+      if (shard instanceof RewardUserMappedShard mappedShard) {
+        mappedShard.close();
+      }
+    }
+    if (this.index != null) {
+      flushIndex();
+      this.index.close();
+      this.index = null;
+    }
+    if (this.syncBackend != null) {
+      flushSync();
+      this.syncBackend.close();
+      this.syncBackend = null;
+    }
+  }
+
+  private void migrateShard(RewardUserShard sourceShard) {
+    log.info(
+        "{} migrating {} reward user records from {} ...",
+        Constants.LOG_NAME,
+        sourceShard.size(),
+        sourceShard.getFileId());
+    for (UUID uuid : sourceShard.getRewardUserUUIDs()) {
+      sourceShard.moveRewardUserRecordTo(getShard(uuid), uuid);
+    }
+    sourceShard.clear();
+  }
+
+  protected RewardUserShard getShard(UUID uuid) {
+    if (this.stagingShard != null && uuid.equals(this.stagingUUID)) {
+      return this.stagingShard;
+    }
+    RewardUserShard[] currentShards = this.shards;
+    if (currentShards.length == 1) {
+      return currentShards[0];
+    }
+    int hash = uuid.hashCode();
+    return currentShards[(hash ^ (hash >>> 16)) & (currentShards.length - 1)];
+  }
+
+  protected RewardUserMonth getRewardMonth(int year, int month, UUID uuid) {
+    syncRewardUserRecord(uuid);
+    RewardUserRecord rewardUserRecord = getShard(uuid).getRewardUserRecord(uuid);
+    return rewardUserRecord != null
+        ? rewardUserRecord.getRewardMonth(RewardUserRecord.getYearMonthKey(year, month))
+        : null;
+  }
+
+  protected RewardUserMonth getOrCreateRewardMonth(int year, int month, UUID uuid) {
+    syncRewardUserRecord(uuid);
+    return getShard(uuid)
+        .getOrCreateRewardUserRecord(uuid)
+        .getOrCreateRewardMonth(RewardUserRecord.getYearMonthKey(year, month));
+  }
+
+  public void addRewardFor(int year, int month, int day, UUID uuid, ItemStack itemStack) {
+    RewardUserMonth rewardMonth = getOrCreateRewardMonth(year, month, uuid);
+    List<ItemStack> rewards = rewardMonth.getRewardItems();
+    int rewardIndex = --day;
+    ItemStack rewardItem = RewardItemPool.intern(itemStack);
+    if (rewardIndex >= 0 && rewards.size() > rewardIndex) {
+      rewards.add(rewardIndex, rewardItem);
+    } else {
+      rewards.add(rewardItem);
+    }
+    rewardMonth.updateRewardMasks();
+    markDirty(uuid, "add_reward");
+  }
+
+  public void addRewardForCurrentMonth(int day, UUID uuid, ItemStack itemStack) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    addRewardFor(currentDate.year(), currentDate.month(), day, uuid, itemStack);
+  }
+
+  public List<ItemStack> getRewardsFor(int year, int month, UUID uuid) {
+    return getOrCreateRewardMonth(year, month, uuid).getRewardItems();
+  }
+
+  public void removeRewardFor(int year, int month, int day, UUID uuid) {
+    RewardUserMonth rewardMonth = getOrCreateRewardMonth(year, month, uuid);
+    List<ItemStack> rewards = rewardMonth.getRewardItems();
+    int rewardIndex = --day;
+    if (rewardIndex >= 0 && rewards.size() > rewardIndex) {
+      rewards.remove(rewardIndex);
+      rewardMonth.updateRewardMasks();
+    }
+    markDirty(uuid, "remove_reward");
+  }
+
+  public void removeRewardForCurrentMonth(int day, UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    removeRewardFor(currentDate.year(), currentDate.month(), day, uuid);
+  }
+
+  public List<ItemStack> getRewardsForCurrentMonth(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    return getRewardsFor(currentDate.year(), currentDate.month(), uuid);
+  }
+
+  public boolean hasUnclaimedRewardsForCurrentMonth(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    RewardUserMonth rewardMonth = getRewardMonth(currentDate.year(), currentDate.month(), uuid);
+    return rewardMonth != null && rewardMonth.hasUnclaimedRewards();
+  }
+
+  public CompoundTag getRewardsForCurrentMonthSyncData(UUID uuid) {
+    List<ItemStack> rewardItems = getRewardsForCurrentMonth(uuid);
+    CompoundTag syncData = new CompoundTag();
+    ListTag itemListTag = new ListTag();
+    for (ItemStack itemStack : rewardItems) {
+      CompoundTag itemStackTag = new CompoundTag();
+      itemStack.save(itemStackTag);
+      itemListTag.add(itemStackTag);
+    }
+    syncData.put(ITEM_LIST_TAG, itemListTag);
+    return syncData;
+  }
+
+  public void setRewardsForCurrentMonth(UUID uuid, List<ItemStack> rewardItems) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    setRewardsFor(currentDate.year(), currentDate.month(), uuid, rewardItems);
+  }
+
+  public void setRewardsFor(int year, int month, UUID uuid, List<ItemStack> rewardItems) {
+    log.debug("Set rewards for {}-{} and player {} to: {}", year, month, uuid, rewardItems);
+    getOrCreateRewardMonth(year, month, uuid).setRewardItems(rewardItems);
+    markDirty(uuid, "set_rewards");
+  }
+
+  public int getLastRewardedDay(int year, int month, UUID uuid) {
+    RewardUserMonth rewardMonth = getRewardMonth(year, month, uuid);
+    return rewardMonth != null ? rewardMonth.getLastRewardedDay() : 0;
+  }
+
+  public int getLastRewardedDayForCurrentMonth(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    return getLastRewardedDay(currentDate.year(), currentDate.month(), uuid);
+  }
+
+  public void setLastRewardedDay(int year, int month, UUID uuid, int lastRewardedDay) {
+    log.debug(
+        "Set last rewarded day for {}-{} and player {} to {}",
+        year,
+        month,
+        uuid,
+        Rewards.getYearMonthDay(lastRewardedDay));
+    getOrCreateRewardMonth(year, month, uuid).setLastRewardedDay(lastRewardedDay);
+    markDirty(uuid, "last_rewarded_day");
+  }
+
+  public void setLastRewardedDayForCurrentMonth(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    setLastRewardedDay(currentDate.year(), currentDate.month(), uuid, currentDate.epochDay());
+  }
+
+  public boolean hasRewardedToday(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    return getLastRewardedDay(currentDate.year(), currentDate.month(), uuid)
+        == currentDate.epochDay();
+  }
+
+  public int getOnlineTicks(RewardDate rewardDate, UUID uuid) {
+    RewardUserMonth rewardMonth = getRewardMonth(rewardDate.year(), rewardDate.month(), uuid);
+    return rewardMonth != null ? rewardMonth.getOnlineTicks(rewardDate.epochDay()) : 0;
+  }
+
+  public int getOnlineTicksForToday(UUID uuid) {
+    return getOnlineTicks(Rewards.getCurrentDate(), uuid);
+  }
+
+  public int addOnlineTicks(RewardDate rewardDate, UUID uuid, int ticks) {
+    if (ticks <= 0) {
+      return getOnlineTicks(rewardDate, uuid);
+    }
+    int onlineTicks =
+        getOrCreateRewardMonth(rewardDate.year(), rewardDate.month(), uuid)
+            .addOnlineTicks(rewardDate.epochDay(), ticks);
+    markDirty(uuid, ONLINE_TICKS_OPERATION);
+    return onlineTicks;
+  }
+
+  public int addOnlineTicksForToday(UUID uuid, int ticks) {
+    return addOnlineTicks(Rewards.getCurrentDate(), uuid, ticks);
+  }
+
+  public int getRewardedDays(int year, int month, UUID uuid) {
+    RewardUserMonth rewardMonth = getRewardMonth(year, month, uuid);
+    return rewardMonth != null ? rewardMonth.getRewardedDays() : 0;
+  }
+
+  public int getRewardedDaysForCurrentMonth(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    return getRewardedDays(currentDate.year(), currentDate.month(), uuid);
+  }
+
+  public int increaseRewardedDays(int year, int month, UUID uuid) {
+    RewardUserMonth rewardMonth = getOrCreateRewardMonth(year, month, uuid);
+    int daysPerMonth = Rewards.getDaysPerMonth(year, month);
+    int rewardedDays = rewardMonth.getRewardedDays();
+    if (rewardedDays < daysPerMonth) {
+      rewardMonth.setRewardedDays(++rewardedDays);
+      markDirty(uuid, "rewarded_days");
+    }
+    return rewardedDays;
+  }
+
+  public int increaseRewardedDaysForCurrentMonth(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    return increaseRewardedDays(currentDate.year(), currentDate.month(), uuid);
+  }
+
+  public int decreaseRewardedDays(int year, int month, UUID uuid) {
+    RewardUserMonth rewardMonth = getRewardMonth(year, month, uuid);
+    int rewardedDays = rewardMonth != null ? rewardMonth.getRewardedDays() : 0;
+    if (rewardedDays > 0) {
+      rewardMonth.setRewardedDays(--rewardedDays);
+      markDirty(uuid, "rewarded_days");
+    }
+    return rewardedDays;
+  }
+
+  public int decreaseRewardedDaysForCurrentMonth(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    return decreaseRewardedDays(currentDate.year(), currentDate.month(), uuid);
+  }
+
+  public void clearRewards(int year, int month, UUID uuid) {
+    RewardUserShard shard = getShard(uuid);
+    RewardUserRecord rewardUserRecord = shard.getRewardUserRecord(uuid);
+    if (rewardUserRecord != null
+        && rewardUserRecord.removeRewardMonth(RewardUserRecord.getYearMonthKey(year, month))
+            != null) {
+      markDirty(uuid, "clear_rewards");
+      if (this.index != null) {
+        this.index.removeMonth(uuid, RewardUserRecord.getYearMonthKey(year, month));
+      }
+    }
+  }
+
+  public void clearRewardsForCurrentMonth(UUID uuid) {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    clearRewards(currentDate.year(), currentDate.month(), uuid);
+  }
+
+  public void resetRewardUserDataForCurrentMonth() {
+    RewardDate currentDate = Rewards.getCurrentDate();
+    resetRewardUserDataFor(currentDate.year(), currentDate.month());
+  }
+
+  public void resetRewardUserDataFor(int year, int month) {
+    log.info("{} Resetting {} for {}-{} ...", Constants.LOG_NAME, this.fileId, year, month);
+    int yearMonthKey = RewardUserRecord.getYearMonthKey(year, month);
+    for (RewardUserShard shard : this.shards) {
+      for (UUID uuid : shard.getRewardUserUUIDs()) {
+        RewardUserRecord rewardUserRecord = shard.getRewardUserRecord(uuid);
+        if (rewardUserRecord != null && rewardUserRecord.removeRewardMonth(yearMonthKey) != null) {
+          shard.setDirty(uuid);
+        }
+      }
+    }
+    if (this.journal != null) {
+      CompoundTag operationTag = new CompoundTag();
+      operationTag.putInt(YEAR_MONTH_TAG, yearMonthKey);
+      this.journal.appendOperation(RewardUserJournal.RESET_MONTH_OPERATION, operationTag);
+    }
+    if (this.index != null) {
+      this.index.removeMonth(null, yearMonthKey);
+    }
+
+    // Records of other servers are invalidated by the new versions of the shared records.
+    if (this.syncBackend != null) {
+      this.syncBackend.removeMonth(yearMonthKey).exceptionally(this::logSharedStoreError);
+    }
+
+    removeReplacedRewards(
+        replacedYearMonthKey -> replacedYearMonthKey == yearMonthKey && !isArchived(yearMonthKey));
+  }
+
+  public void clearRewardUserData() {
+    log.info("{} Clearing {} ...", Constants.LOG_NAME, this.fileId);
+    for (RewardUserShard shard : this.shards) {
+      shard.clear();
+    }
+    if (this.journal != null) {
+      this.journal.appendOperation(RewardUserJournal.CLEAR_ALL_OPERATION, new CompoundTag());
+    }
+    if (this.index != null) {
+      this.pendingIndexUUIDs.clear();
+      this.index.clear();
+    }
+    if (this.syncBackend != null) {
+      this.pendingSyncUUIDs.clear();
+      this.syncBackend.clear().exceptionally(this::logSharedStoreError);
+    }
+
+    removeReplacedRewards(yearMonthKey -> !isArchived(yearMonthKey));
+  }
+
+  /**
+   * Drops the replaced rewards of the matching months, after no record is referencing them anymore.
+   * Replaced rewards are kept by the reward data and are only known by the subclasses.
+   */
+  protected void removeReplacedRewards(IntPredicate yearMonthKeys) {}
+
+  private boolean isArchived(int yearMonthKey) {
+    return this.archive != null && this.archive.isArchived(yearMonthKey);
+  }
+
+  private Void logSharedStoreError(Throwable error) {
+    log.error("{} unable to update shared reward user data:", Constants.LOG_NAME, error);
+    return null;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import net.minecraft.nbt.CompoundTag;
+
+/**
+ * Shared store for the authoritative reward user records of several servers, e.g. behind a proxy.
+ * Every record has a version which is increased with each write, writes are only accepted for the
+ * expected version (optimistic locking).
+ *
+ * <p>All operations are executed off-thread, failed operations complete exceptionally.
+ */
+public interface RewardUserSyncBackend {
+
+  long NO_VERSION = 0;
+
+  /** Reads the record of the player or completes with null, if there is no shared record yet. */
+  CompletableFuture<VersionedRecord> read(UUID uuid);
+
+  /**
+   * Writes the record, if the shared record still has the expected version. The expected version
+   * of a new record is {@link #NO_VERSION}.
+   *
+   * @return the new version or {@link #NO_VERSION}, if the record was changed in the meantime
+   */
+  CompletableFuture<Long> write(UUID uuid, long expectedVersion, List<CompoundTag> rewardUserTags);
+
+  /** Removes the month from all shared records, e.g. after the month was reset by an admin. */
+  CompletableFuture<Void> removeMonth(int yearMonthKey);
+
+  /** Removes all months from all shared records, the versions of the records are kept. */
+  CompletableFuture<Void> clear();
+
+  /** Returns the records which were written since the last poll, including the own writes. */
+  CompletableFuture<List<Change>> pollChanges();
+
+  /** Waits for the pending operations and closes the backend. */
+  void close();
+
+  record VersionedRecord(long version, List<CompoundTag> rewardUserTags) {}
+
+  record Change(UUID uuid, long version) {}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.data;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.server.MinecraftServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes saved data snapshots on a background thread. The snapshot is taken on the server thread,
+ * the compression and file access is done off-thread. Multiple pending snapshots for the same file
+ * are coalesced, so only the latest one is written.
+ */
+public class SavedDataWriter {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private static final long FLUSH_TIMEOUT_SECONDS = 30;
+  private static final Map<File, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+  private static final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, Constants.LOG_NAME + " Saved Data Writer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  protected SavedDataWriter() {}
+
+  /**
+   * Queues the snapshot for writing. The returned future is completed with true after the snapshot
+   * or a newer snapshot of the same file was written, or with false if the write failed.
+   */
+  public static CompletableFuture<Boolean> writeAsync(File file, CompoundTag data) {
+    CompoundTag compoundTag = new CompoundTag();
+    compoundTag.put("data", data);
+    NbtUtils.addCurrentDataVersion(compoundTag);
+
+    // Only queue a new write, if there is no pending write for the same file.
+    PendingWrite pendingWrite = new PendingWrite(compoundTag, new CompletableFuture<>());
+    PendingWrite replacedWrite = pendingWrites.put(file, pendingWrite);
+    if (replacedWrite == null) {
+      executor.execute(() -> write(file));
+    } else {
+      // The replaced snapshot is covered by the new one.
+      pendingWrite.written().thenAccept(replacedWrite.written()::complete);
+    }
+    return pendingWrite.written();
+  }
+
+  /**
+   * Builds the snapshot on the writer thread and queues it for writing, so that the serialization
+   * does not block the server thread. The data must only read immutable state.
+   */
+  public static CompletableFuture<Boolean> writeAsync(File file, Supplier<CompoundTag> data) {
+    return submit(data)
+        .thenCompose(compoundTag -> writeAsync(file, compoundTag))
+        .exceptionally(
+            e -> {
+              log.error("{} could not serialize data {}:", Constants.LOG_NAME, file, e);
+              return false;
+            });
+  }
+
+  /** Runs the task on the writer thread, after all already queued writes. */
+  static void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  /** Runs the task on the writer thread, after all already queued writes. */
+  static <T> CompletableFuture<T> submit(Supplier<T> task) {
+    return CompletableFuture.supplyAsync(task, executor);
+  }
+
+  /** Reads the given file, including the data of a pending write for the file. */
+  public static CompoundTag read(File file) throws IOException {
+    PendingWrite pendingWrite = pendingWrites.get(file);
+    if (pendingWrite != null) {
+      return pendingWrite.compoundTag().getCompound("data");
+    }
+    return file.exists() ? NbtIo.readCompressed(file).getCompound("data") : null;
+  }
+
+  /** Waits until all pending writes are done, including writes which were queued again. */
+  public static void flush() {
+    long timeoutNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(FLUSH_TIMEOUT_SECONDS);
+    try {
+      do {
+        executor.submit(() -> {}).get(timeoutNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+      } while (!pendingWrites.isEmpty());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("{} interrupted while waiting for pending saved data!", Constants.LOG_NAME, e);
+    } catch (ExecutionException | TimeoutException e) {
+      log.error("{} unable to flush pending saved data!", Constants.LOG_NAME, e);
+    }
+  }
+
+  public static void handleServerStoppedEvent(MinecraftServer server) {
+    log.debug("{} waiting for {} pending saved data ...", Constants.LOG_NAME, pendingWrites.size());
+    flush();
+  }
+
+  private static void write(File file) {
+    PendingWrite pendingWrite = pendingWrites.get(file);
+    if (pendingWrite == null) {
+      return;
+    }
+
+    // Write into a temporary file first, to avoid broken files on crashes.
+    boolean written = false;
+    File tempFile = new File(file.getPath() + ".tmp");
+    try {
+      File parentFile = file.getParentFile();
+      if (parentFile != null && !parentFile.exists()) {
+        Files.createDirectories(parentFile.toPath());
+      }
+      NbtIo.writeCompressed(pendingWrite.compoundTag(), tempFile);
+      try {
+        Files.move(
+            tempFile.toPath(),
+            file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      written = true;
+    } catch (IOException e) {
+      log.error("{} could not save data {}:", Constants.LOG_NAME, file, e);
+    }
+
+    // Write again, if a newer snapshot was queued in the meantime.
+    if (pendingWrites.remove(file, pendingWrite)) {
+      pendingWrite.written().complete(written);
+    } else {
+      if (written) {
+        pendingWrite.written().complete(true);
+      }
+      executor.execute(() -> write(file));
+    }
+  }
+
+  private record PendingWrite(CompoundTag compoundTag, CompletableFuture<Boolean> written) {}
+}
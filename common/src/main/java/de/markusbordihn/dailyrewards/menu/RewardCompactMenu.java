@@ -85,6 +85,7 @@ public class RewardCompactMenu extends RewardMenu {
         SpecialRewardUserData.get()
             .getRewardsForCurrentMonthSyncData(playerInventory.player.getUUID()),
         RewardData.get().getSpecialRewardsForCurrentMonthSyncData());
+    this.sharedRewards = hasSharedStore();
   }
 
   public RewardCompactMenu(int windowId, Inventory playerInventory, FriendlyByteBuf data) {
@@ -94,13 +95,14 @@ public class RewardCompactMenu extends RewardMenu {
         ModMenuTypes.REWARD_COMPACT_MENU.get(),
         data.readUUID(),
         data.readInt(),
-        data.readUtf(),
+        data.readInt(),
         data.readNbt(),
         data.readNbt(),
         data.readInt(),
-        data.readUtf(),
+        data.readInt(),
         data.readNbt(),
         data.readNbt());
+    this.sharedRewards = data.readBoolean();
   }
 
   public RewardCompactMenu(
@@ -109,11 +111,11 @@ public class RewardCompactMenu extends RewardMenu {
       MenuType<?> menuType,
       UUID playerUUID,
       int rewardedDays,
-      String lastRewardedDay,
+      int lastRewardedDay,
       CompoundTag userRewardsForCurrentMonth,
       CompoundTag rewardsForCurrentMonth,
       int specialRewardedDays,
-      String lastSpecialRewardedDay,
+      int lastSpecialRewardedDay,
       CompoundTag specialUserRewardsForCurrentMonth,
       CompoundTag specialRewardsForCurrentMonth) {
     super(menuType, windowId, playerInventory);
@@ -21,18 +21,23 @@ package de.markusbordihn.dailyrewards.menu;
 
 import de.markusbordihn.dailyrewards.Constants;
 import de.markusbordihn.dailyrewards.data.RewardUserData;
+import de.markusbordihn.dailyrewards.data.RewardUserStorage;
 import de.markusbordihn.dailyrewards.data.SpecialRewardUserData;
 import de.markusbordihn.dailyrewards.item.ModItems;
 import de.markusbordihn.dailyrewards.menu.slots.*;
+import de.markusbordihn.dailyrewards.rewards.RewardItemPool;
 import de.markusbordihn.dailyrewards.rewards.SpecialRewards;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import net.minecraft.world.Container;
 import net.minecraft.world.SimpleContainer;
 import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.ClickType;
 import net.minecraft.world.inventory.MenuType;
 import net.minecraft.world.inventory.Slot;
 import net.minecraft.world.item.ItemStack;
@@ -56,12 +61,14 @@ public class RewardMenu extends AbstractContainerMenu {
   protected final Level level;
   protected final Player player;
   protected final boolean specialRewardAvailable;
+  protected boolean sharedRewards = false;
+  private final Set<Slot> pendingSharedClaims = new HashSet<>();
   // Reward Data
   protected int rewardedDays = 0;
-  protected String lastRewardedDay;
+  protected int lastRewardedDay;
   // Special Reward Data
   protected int rewardedSpecialDays = 0;
-  protected String lastRewardedSpecialDay;
+  protected int lastRewardedSpecialDay;
   // Misc
   protected UUID playerUUID;
 
@@ -71,7 +78,8 @@ public class RewardMenu extends AbstractContainerMenu {
     this.level = this.player.level();
     this.specialRewardAvailable =
         SpecialRewards.hasSpecialRewardItemsForCurrentMonth()
-            && SpecialRewards.isSpecialRewardUserForCurrentMonth(this.player.getName().getString());
+            && SpecialRewards.isSpecialRewardUserForCurrentMonth(
+                this.player.getUUID(), this.player.getName().getString());
   }
 
   public void syncRewardContainer(Player player) {
@@ -88,28 +96,93 @@ public class RewardMenu extends AbstractContainerMenu {
     if (level.isClientSide) {
       return;
     }
-    List<ItemStack> userRewards = new ArrayList<>();
-    for (int index = 0; index < this.getRewardsUserContainer().getContainerSize(); index++) {
-      ItemStack itemStack = this.getRewardsUserContainer().getItem(index);
-      if (itemStack != null && !itemStack.isEmpty()) {
-        userRewards.add(itemStack);
-      }
-    }
-    RewardUserData.get().setRewardsForCurrentMonth(player.getUUID(), userRewards);
+    RewardUserData.get()
+        .setRewardsForCurrentMonth(
+            player.getUUID(), getUserRewards(this.getRewardsUserContainer(), -1));
   }
 
   public void syncSpecialRewardsUserContainer(Player player) {
     if (level.isClientSide) {
       return;
     }
+    SpecialRewardUserData.get()
+        .setRewardsForCurrentMonth(
+            player.getUUID(), getUserRewards(this.getSpecialRewardsUserContainer(), -1));
+  }
+
+  /** Rewards are synced with other servers, if the reward user data uses a shared store. */
+  public static boolean hasSharedStore() {
+    return RewardUserData.get().hasSharedStore() || SpecialRewardUserData.get().hasSharedStore();
+  }
+
+  /** Synced rewards are claimed by clicking on them and can't be picked up directly. */
+  public boolean isSharedRewards() {
+    return this.sharedRewards;
+  }
+
+  @Override
+  public void clicked(int slotIndex, int button, ClickType clickType, Player player) {
+    if (this.sharedRewards
+        && slotIndex >= 0
+        && slotIndex < this.slots.size()
+        && this.slots.get(slotIndex) instanceof TakeableRewardSlot) {
+      if (clickType == ClickType.PICKUP || clickType == ClickType.QUICK_MOVE) {
+        claimSharedReward(player, this.slots.get(slotIndex));
+      }
+      return;
+    }
+    super.clicked(slotIndex, button, clickType, player);
+  }
+
+  /**
+   * Claims the reward of the slot, if the reward user data are synced with other servers. The
+   * reward is only handed out after the claim was written to the shared record, so that it can't
+   * be claimed on two servers.
+   */
+  protected void claimSharedReward(Player player, Slot slot) {
+    if (level.isClientSide
+        || !slot.hasItem()
+        || slot.getItem().is(ModItems.TAKEN_REWARD.get())
+        || this.pendingSharedClaims.contains(slot)) {
+      return;
+    }
+    RewardUserStorage rewardUserStorage;
+    if (slot.container == this.getRewardsUserContainer()) {
+      rewardUserStorage = RewardUserData.get();
+    } else if (slot.container == this.getSpecialRewardsUserContainer()) {
+      rewardUserStorage = SpecialRewardUserData.get();
+    } else {
+      return;
+    }
+    UUID uuid = player.getUUID();
+    ItemStack itemStack = slot.getItem().copy();
+    List<ItemStack> userRewards = getUserRewards(slot.container, slot.getContainerSlot());
+    this.pendingSharedClaims.add(slot);
+    rewardUserStorage.applySharedChange(
+        uuid,
+        () -> rewardUserStorage.setRewardsForCurrentMonth(uuid, userRewards),
+        applied -> {
+          this.pendingSharedClaims.remove(slot);
+          if (Boolean.TRUE.equals(applied)) {
+            slot.set(new ItemStack(ModItems.TAKEN_REWARD.get()));
+            player.getInventory().placeItemBackInInventory(itemStack);
+          }
+        });
+  }
+
+  /** Returns the rewards of the user container, with the reward of the index marked as taken. */
+  private static List<ItemStack> getUserRewards(Container container, int takenIndex) {
     List<ItemStack> userRewards = new ArrayList<>();
-    for (int index = 0; index < this.getSpecialRewardsUserContainer().getContainerSize(); index++) {
-      ItemStack itemStack = this.getSpecialRewardsUserContainer().getItem(index);
+    for (int index = 0; index < container.getContainerSize(); index++) {
+      ItemStack itemStack =
+          index == takenIndex
+              ? new ItemStack(ModItems.TAKEN_REWARD.get())
+              : container.getItem(index);
       if (itemStack != null && !itemStack.isEmpty()) {
-        userRewards.add(itemStack);
+        userRewards.add(RewardItemPool.intern(itemStack));
       }
     }
-    SpecialRewardUserData.get().setRewardsForCurrentMonth(player.getUUID(), userRewards);
+    return userRewards;
   }
 
   public UUID getPlayerUUID() {
@@ -120,7 +193,7 @@ public class RewardMenu extends AbstractContainerMenu {
     return this.rewardedDays;
   }
 
-  public String getLastRewardedDay() {
+  public int getLastRewardedDay() {
     return this.lastRewardedDay;
   }
 
@@ -144,7 +217,7 @@ public class RewardMenu extends AbstractContainerMenu {
     return this.rewardedSpecialDays;
   }
 
-  public String getLastRewardedSpecialDay() {
+  public int getLastRewardedSpecialDay() {
     return this.lastRewardedSpecialDay;
   }
 
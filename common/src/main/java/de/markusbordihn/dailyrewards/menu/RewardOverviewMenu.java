@@ -72,6 +72,7 @@ public class RewardOverviewMenu extends RewardMenu {
         RewardUserData.get().getLastRewardedDayForCurrentMonth(playerInventory.player.getUUID()),
         RewardUserData.get().getRewardsForCurrentMonthSyncData(playerInventory.player.getUUID()),
         RewardData.get().getRewardsForCurrentMonthSyncData());
+    this.sharedRewards = hasSharedStore();
   }
 
   public RewardOverviewMenu(int windowId, Inventory playerInventory, FriendlyByteBuf data) {
@@ -81,9 +82,10 @@ public class RewardOverviewMenu extends RewardMenu {
         ModMenuTypes.REWARD_OVERVIEW_MENU.get(),
         data.readUUID(),
         data.readInt(),
-        data.readUtf(),
+        data.readInt(),
         data.readNbt(),
         data.readNbt());
+    this.sharedRewards = data.readBoolean();
   }
 
   public RewardOverviewMenu(
@@ -92,7 +94,7 @@ public class RewardOverviewMenu extends RewardMenu {
       MenuType<?> menuType,
       UUID playerUUID,
       int rewardedDays,
-      String lastRewardedDay,
+      int lastRewardedDay,
       CompoundTag userRewardsForCurrentMonth,
       CompoundTag rewardsForCurrentMonth) {
     super(menuType, windowId, playerInventory);
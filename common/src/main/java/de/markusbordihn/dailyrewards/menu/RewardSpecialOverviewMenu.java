@@ -72,6 +72,7 @@ public class RewardSpecialOverviewMenu extends RewardMenu {
         SpecialRewardUserData.get()
             .getRewardsForCurrentMonthSyncData(playerInventory.player.getUUID()),
         RewardData.get().getSpecialRewardsForCurrentMonthSyncData());
+    this.sharedRewards = hasSharedStore();
   }
 
   public RewardSpecialOverviewMenu(int windowId, Inventory playerInventory, FriendlyByteBuf data) {
@@ -81,9 +82,10 @@ public class RewardSpecialOverviewMenu extends RewardMenu {
         ModMenuTypes.REWARD_SPECIAL_OVERVIEW_MENU.get(),
         data.readUUID(),
         data.readInt(),
-        data.readUtf(),
+        data.readInt(),
         data.readNbt(),
         data.readNbt());
+    this.sharedRewards = data.readBoolean();
   }
 
   public RewardSpecialOverviewMenu(
@@ -92,7 +94,7 @@ public class RewardSpecialOverviewMenu extends RewardMenu {
       MenuType<?> menuType,
       UUID playerUUID,
       int rewardedDays,
-      String lastRewardedDay,
+      int lastRewardedDay,
       CompoundTag userRewardsForCurrentMonth,
       CompoundTag rewardsForCurrentMonth) {
     super(menuType, windowId, playerInventory);
@@ -55,7 +55,9 @@ public class TakeableRewardSlot extends DailyRewardSlot {
 
   @Override
   public boolean mayPickup(Player player) {
-    return !getItem().is(ModItems.TAKEN_REWARD.get());
+    // Synced rewards are claimed by the menu, after the claim was written to the shared store.
+    return !getItem().is(ModItems.TAKEN_REWARD.get())
+        && (this.menu == null || !this.menu.isSharedRewards());
   }
 
   @Override
@@ -24,13 +24,19 @@ import static de.markusbordihn.dailyrewards.config.ModConfigs.COMMON;
 import de.markusbordihn.dailyrewards.Constants;
 import de.markusbordihn.dailyrewards.data.RewardData;
 import de.markusbordihn.dailyrewards.data.RewardUserData;
+import de.markusbordihn.dailyrewards.data.RewardUserStorage;
 import de.markusbordihn.dailyrewards.data.SpecialRewardUserData;
+import de.markusbordihn.dailyrewards.rewards.RewardDate;
 import de.markusbordihn.dailyrewards.rewards.Rewards;
 import de.markusbordihn.dailyrewards.rewards.RewardsScreen;
 import de.markusbordihn.dailyrewards.rewards.SpecialRewards;
-import java.util.Set;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
@@ -46,7 +52,8 @@ public class PlayerRewardManager {
 
   private static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
 
-  private static final short REWARD_CHECK_TICK = 20 * 60; // every 1 Minute
+  private static final int SHARED_CHANGE_RETRY_TICKS = 20;
+
   private static final MutableComponent claimCommand =
       Component.literal("/DailyRewards claim")
           .setStyle(
@@ -55,15 +62,22 @@ public class PlayerRewardManager {
                   .withClickEvent(
                       new ClickEvent(ClickEvent.Action.SUGGEST_COMMAND, "/DailyRewards claim")));
 
-  private static short ticker = 0;
-  private static Set<ServerPlayer> playerList = ConcurrentHashMap.newKeySet();
+  private static PlayerRewardTimingWheel timingWheel = new PlayerRewardTimingWheel();
+  private static PlayerRewardTimingWheel unloadTimingWheel = new PlayerRewardTimingWheel();
+  private static Map<UUID, Long> playerSessionTicks = new ConcurrentHashMap<>();
+  private static Deque<PendingReward> pendingRewards = new ArrayDeque<>();
+  private static int scheduledRewardTimePerDay;
 
   protected PlayerRewardManager() {}
 
   public static void onServerAboutToStartEvent(MinecraftServer server) {
-    playerList = ConcurrentHashMap.newKeySet();
+    timingWheel = new PlayerRewardTimingWheel();
+    unloadTimingWheel = new PlayerRewardTimingWheel();
+    playerSessionTicks = new ConcurrentHashMap<>();
+    pendingRewards = new ArrayDeque<>();
     int rewardTimePerDay = COMMON.rewardTimePerDay;
     int rewardTimePerDayTicks = rewardTimePerDay * 60 * 20;
+    scheduledRewardTimePerDay = rewardTimePerDay;
 
     if (Boolean.TRUE.equals(COMMON.automaticRewardPlayers)) {
       log.info(
@@ -87,9 +101,6 @@ public class PlayerRewardManager {
   }
 
   public static void handlePlayerLoggedInEvent(ServerPlayer player) {
-    // Track currently logged in player.
-    playerList.add(player);
-
     // Track unclaimed rewards for player.
     boolean hasUnclaimedRewards = false;
 
@@ -100,6 +111,19 @@ public class PlayerRewardManager {
       return;
     }
 
+    // Keep the reward records of the player loaded, while the player is online.
+    unloadTimingWheel.cancel(uuid);
+
+    // The player could have been rewarded on another server of the network in the meantime.
+    RewardUserData.get().refreshRewardUserRecord(uuid);
+    SpecialRewardUserData.get().refreshRewardUserRecord(uuid);
+
+    // Track currently logged in player and schedule the automatic reward based on the already
+    // accumulated online time for today.
+    playerSessionTicks.put(uuid, timingWheel.getCurrentTick());
+    timingWheel.schedule(
+        uuid, getRewardTimePerDayTicks() - RewardUserData.get().getOnlineTicksForToday(uuid));
+
     // Days left for current month to claim rewards.
     int daysLeftCurrentMonth = Rewards.getDaysLeftCurrentMonth();
 
@@ -166,109 +190,283 @@ public class PlayerRewardManager {
   }
 
   public static void handlePlayerLoggedOutEvent(ServerPlayer player) {
-    if (playerList.isEmpty()) {
-      return;
+    if (player != null && playerSessionTicks.containsKey(player.getUUID())) {
+      UUID uuid = player.getUUID();
+      timingWheel.cancel(uuid);
+      updateOnlineTicks(uuid, Rewards.getCurrentDate());
+      playerSessionTicks.remove(uuid);
+
+      // Share the changes before the player joins another server of the network.
+      if (RewardUserData.available()) {
+        RewardUserData.get().flushRewardUserRecord(uuid);
+      }
+      if (SpecialRewardUserData.available()) {
+        SpecialRewardUserData.get().flushRewardUserRecord(uuid);
+      }
+
+      // Unload the reward records of the player, after the player was offline for a while.
+      if (COMMON.userDataLazyLoading) {
+        unloadTimingWheel.schedule(uuid, COMMON.userDataIdleUnloadTicks);
+      }
+    }
+  }
+
+  public static void handleDayChangeEvent(RewardDate rewardDate) {
+    // Book the online time before midnight to the previous day and restart the timer.
+    log.debug(
+        "Scheduling rewards for {} online players on day {} ...",
+        playerSessionTicks.size(),
+        rewardDate);
+    RewardDate previousDate = RewardDate.of(LocalDate.ofEpochDay(rewardDate.epochDay() - 1L));
+    int rewardTimePerDayTicks = getRewardTimePerDayTicks();
+    for (UUID uuid : playerSessionTicks.keySet()) {
+      updateOnlineTicks(uuid, previousDate);
+      timingWheel.schedule(uuid, rewardTimePerDayTicks);
     }
+  }
 
-    if (player != null) {
-      playerList.remove(player);
+  /** Adds the online ticks since the last update to the accumulated online time of the day. */
+  private static int updateOnlineTicks(UUID uuid, RewardDate rewardDate) {
+    long currentTick = timingWheel.getCurrentTick();
+    Long sessionTick = playerSessionTicks.replace(uuid, currentTick);
+    if (sessionTick == null || !RewardUserData.available()) {
+      return 0;
     }
+    return RewardUserData.get()
+        .addOnlineTicks(rewardDate, uuid, (int) Math.max(0, currentTick - sessionTick));
   }
 
   public static void handleServerTickEvent(MinecraftServer server) {
-    // Early return if we should not reward player automatically or
-    // we have no players online.
+    long tick = server.getTickCount();
+    if (COMMON.rewardTimePerDay != scheduledRewardTimePerDay) {
+      rescheduleRewards();
+    }
+    unloadTimingWheel.advance(tick, uuid -> unloadPlayer(server, uuid));
+    if (COMMON.automaticRewardTickBudgetPlayers <= 0
+        && COMMON.automaticRewardTickBudgetMicros <= 0
+        && pendingRewards.isEmpty()) {
+      timingWheel.advance(tick, uuid -> rewardPlayer(server, uuid));
+      return;
+    }
+
+    // Queue due players and only evaluate as many of them as the tick budget allows.
+    timingWheel.advance(tick, uuid -> pendingRewards.add(new PendingReward(uuid, tick)));
+    processPendingRewards(server, tick);
+  }
+
+  /** Moves the scheduled rewards to their new due tick, after the reward time was reloaded. */
+  private static void rescheduleRewards() {
+    log.info(
+        "Rescheduling rewards for {} online players with {} min reward time ...",
+        playerSessionTicks.size(),
+        COMMON.rewardTimePerDay);
+    scheduledRewardTimePerDay = COMMON.rewardTimePerDay;
+    int rewardTimePerDayTicks = getRewardTimePerDayTicks();
+    RewardDate currentDate = Rewards.getCurrentDate();
+    for (UUID uuid : playerSessionTicks.keySet()) {
+      if (timingWheel.isScheduled(uuid)) {
+        int onlineTicks = updateOnlineTicks(uuid, currentDate);
+        timingWheel.schedule(uuid, (long) rewardTimePerDayTicks - onlineTicks);
+      }
+    }
+  }
+
+  private static void processPendingRewards(MinecraftServer server, long tick) {
+    if (pendingRewards.isEmpty()) {
+      return;
+    }
+
+    // Make sure the queue is drained within the max delay, even with a too small budget.
+    int maxDelayTicks = Math.max(1, COMMON.automaticRewardMaxDelayTicks);
+    int budgetPlayers =
+        Math.max(
+            COMMON.automaticRewardTickBudgetPlayers > 0
+                ? COMMON.automaticRewardTickBudgetPlayers
+                : Integer.MAX_VALUE,
+            (pendingRewards.size() + maxDelayTicks - 1) / maxDelayTicks);
+    long budgetNanos =
+        COMMON.automaticRewardTickBudgetMicros > 0
+            ? COMMON.automaticRewardTickBudgetMicros * 1000L
+            : Long.MAX_VALUE;
+    long startTime = System.nanoTime();
+    int processedPlayers = 0;
+
+    while (!pendingRewards.isEmpty()) {
+      PendingReward pendingReward = pendingRewards.peek();
+      boolean overdue = tick - pendingReward.queuedTick() >= maxDelayTicks;
+      if (!overdue
+          && (processedPlayers >= budgetPlayers
+              || System.nanoTime() - startTime >= budgetNanos)) {
+        break;
+      }
+      pendingRewards.poll();
+      rewardPlayer(server, pendingReward.uuid());
+      processedPlayers++;
+    }
+
+    if (!pendingRewards.isEmpty()) {
+      log.debug(
+          "Deferred {} pending rewards after processing {} players in tick {}.",
+          pendingRewards.size(),
+          processedPlayers,
+          tick);
+    }
+  }
+
+  private static void unloadPlayer(MinecraftServer server, UUID uuid) {
+    if (server.getPlayerList().getPlayer(uuid) != null) {
+      return;
+    }
+    boolean unloaded =
+        RewardUserData.available() && RewardUserData.get().unloadRewardUserRecord(uuid);
+    unloaded |=
+        SpecialRewardUserData.available()
+            && SpecialRewardUserData.get().unloadRewardUserRecord(uuid);
+    if (unloaded) {
+      log.debug("Unloaded idle reward records for player {}.", uuid);
+    }
+  }
+
+  private static int getRewardTimePerDayTicks() {
+    return COMMON.rewardTimePerDay * 60 * 20;
+  }
+
+  private record PendingReward(UUID uuid, long queuedTick) {}
+
+  private static void rewardPlayer(MinecraftServer server, UUID uuid) {
+    // Early return if we should not reward player automatically or the player is offline.
+    ServerPlayer player = server.getPlayerList().getPlayer(uuid);
     if ((!COMMON.automaticRewardPlayers && !COMMON.automaticRewardSpecialPlayers)
-        || ticker++ < REWARD_CHECK_TICK
-        || playerList.isEmpty()) {
+        || player == null) {
       return;
     }
 
-    // Check if we have any players online which should be rewarded.
-    for (ServerPlayer player : playerList) {
-      if (player.tickCount > COMMON.rewardTimePerDay * 60 * 20) {
-        UUID uuid = player.getUUID();
-        String username = player.getName().getString();
-        boolean showRewardClaimCommand = false;
-
-        // Reward player if he has not been rewarded today.
-        RewardUserData rewardUserData = RewardUserData.get();
-        if (Boolean.FALSE.equals(COMMON.automaticRewardPlayers)) {
-          log.debug("Player {} will not be automatically rewarded.", player);
-        } else if (!rewardUserData.hasRewardedToday(uuid)) {
-          // Update stored data
-          rewardUserData.setLastRewardedDayForCurrentMonth(uuid);
-          int rewardedDays = rewardUserData.increaseRewardedDaysForCurrentMonth(uuid);
+    // Reschedule player, if the accumulated online time is not yet enough e.g. after a reload.
+    int onlineTicks = updateOnlineTicks(uuid, Rewards.getCurrentDate());
+    int rewardTimePerDayTicks = getRewardTimePerDayTicks();
+    if (onlineTicks < rewardTimePerDayTicks) {
+      timingWheel.schedule(uuid, (long) rewardTimePerDayTicks - onlineTicks);
+      return;
+    }
 
-          // Add reward for rewarded Days.
-          ItemStack itemStack = RewardData.get().getRewardForCurrentMonth(rewardedDays);
-          if (itemStack.isEmpty()) {
-            log.error("Reward {} for day {} for current month was empty!", itemStack, rewardedDays);
-          } else {
-            rewardUserData.addRewardForCurrentMonth(rewardedDays, uuid, itemStack);
-            if (COMMON.showReceivedRewardMessage) {
-              player.sendSystemMessage(
-                  Component.translatable(
-                      Constants.TEXT_PREFIX + "rewarded_item",
-                      player.getName(),
-                      itemStack,
-                      rewardedDays));
-            }
-            showRewardClaimCommand = true;
-          }
+    // The special reward is granted after the daily reward, to show the claim command only once.
+    grantReward(
+        server,
+        uuid,
+        false,
+        rewarded ->
+            grantReward(
+                server,
+                uuid,
+                true,
+                specialRewarded -> {
+                  // Show reward command if player has any unclaimed rewards.
+                  ServerPlayer rewardedPlayer = server.getPlayerList().getPlayer(uuid);
+                  if (COMMON.showRewardClaimCommandMessage
+                      && (rewarded || specialRewarded)
+                      && rewardedPlayer != null) {
+                    rewardedPlayer.sendSystemMessage(
+                        Component.translatable(
+                            Constants.TEXT_PREFIX + "claim_rewards", claimCommand));
+                  }
+                }));
+  }
 
-          log.info(
-              "Reward player {} daily reward for {} days with {} ...",
-              player,
-              rewardedDays,
-              itemStack);
-        }
-
-        // Special Reward for player if he has not been rewarded today.
-        SpecialRewardUserData specialRewardUserData = SpecialRewardUserData.get();
-        if (Boolean.FALSE.equals(COMMON.automaticRewardSpecialPlayers)) {
-          log.debug("Player {} will not be automatically special rewarded for today.", player);
-        } else if (!specialRewardUserData.hasRewardedToday(uuid)
-            && SpecialRewards.isSpecialRewardUserForCurrentMonth(username)) {
+  /**
+   * Grants the (special) reward of today, if the player was not rewarded today. With a shared
+   * store the reward is only granted after it was written to the shared record, so that it can't
+   * be granted twice by two servers. The next step is called with true, if a reward item was added.
+   */
+  private static void grantReward(
+      MinecraftServer server, UUID uuid, boolean special, Consumer<Boolean> nextStep) {
+    ServerPlayer player = server.getPlayerList().getPlayer(uuid);
+    RewardUserStorage rewardUserStorage =
+        special ? SpecialRewardUserData.get() : RewardUserData.get();
+    if (player == null) {
+      nextStep.accept(false);
+      return;
+    }
+    if (Boolean.FALSE.equals(
+        special ? COMMON.automaticRewardSpecialPlayers : COMMON.automaticRewardPlayers)) {
+      if (special) {
+        log.debug("Player {} will not be automatically special rewarded for today.", player);
+      } else {
+        log.debug("Player {} will not be automatically rewarded.", player);
+      }
+      nextStep.accept(false);
+      return;
+    }
+    if (rewardUserStorage.hasRewardedToday(uuid)
+        || special
+            && !SpecialRewards.isSpecialRewardUserForCurrentMonth(
+                uuid, player.getName().getString())) {
+      nextStep.accept(false);
+      return;
+    }
+
+    rewardUserStorage.applySharedChange(
+        uuid,
+        () -> {
           // Update stored data
-          specialRewardUserData.setLastRewardedDayForCurrentMonth(uuid);
-          int rewardedDays = specialRewardUserData.increaseRewardedDaysForCurrentMonth(uuid);
+          rewardUserStorage.setLastRewardedDayForCurrentMonth(uuid);
+          int rewardedDays = rewardUserStorage.increaseRewardedDaysForCurrentMonth(uuid);
 
           // Add reward for rewarded Days.
-          ItemStack itemStack = RewardData.get().getSpecialRewardForCurrentMonth(rewardedDays);
-          if (itemStack.isEmpty()) {
-            log.error(
-                "Special Reward {} for day {} for current month was empty!",
-                itemStack,
-                rewardedDays);
+          ItemStack itemStack = getRewardForCurrentMonth(special, player, rewardedDays);
+          if (!itemStack.isEmpty()) {
+            rewardUserStorage.addRewardForCurrentMonth(rewardedDays, uuid, itemStack);
+          }
+        },
+        applied -> {
+          if (Boolean.TRUE.equals(applied)) {
+            nextStep.accept(
+                handleGrantedReward(
+                    server.getPlayerList().getPlayer(uuid), rewardUserStorage, special));
           } else {
-            specialRewardUserData.addRewardForCurrentMonth(rewardedDays, uuid, itemStack);
-            if (COMMON.showReceivedRewardSpecialMessage) {
-              player.sendSystemMessage(
-                  Component.translatable(
-                      Constants.TEXT_PREFIX + "rewarded_item",
-                      player.getName(),
-                      itemStack,
-                      rewardedDays));
-            }
-            showRewardClaimCommand = true;
+            // Check the refreshed record again, e.g. if another server rewarded the player.
+            timingWheel.schedule(uuid, SHARED_CHANGE_RETRY_TICKS);
+            nextStep.accept(false);
           }
+        });
+  }
 
-          log.info(
-              "Special Reward player {} daily reward for {} days with {} ...",
-              player,
-              rewardedDays,
-              itemStack);
-        }
-
-        // Show reward command if player has any unclaimed rewards.
-        if (COMMON.showRewardClaimCommandMessage && showRewardClaimCommand) {
-          player.sendSystemMessage(
-              Component.translatable(Constants.TEXT_PREFIX + "claim_rewards", claimCommand));
-        }
-      }
+  private static boolean handleGrantedReward(
+      ServerPlayer player, RewardUserStorage rewardUserStorage, boolean special) {
+    // The player could have left in the meantime, the reward is stored anyway.
+    if (player == null) {
+      return false;
     }
+    int rewardedDays = rewardUserStorage.getRewardedDaysForCurrentMonth(player.getUUID());
+    ItemStack itemStack = getRewardForCurrentMonth(special, player, rewardedDays);
+    if (itemStack.isEmpty()) {
+      log.error(
+          "{} {} for day {} for current month was empty!",
+          special ? "Special Reward" : "Reward",
+          itemStack,
+          rewardedDays);
+    } else if (special
+        ? COMMON.showReceivedRewardSpecialMessage
+        : COMMON.showReceivedRewardMessage) {
+      player.sendSystemMessage(
+          Component.translatable(
+              Constants.TEXT_PREFIX + "rewarded_item", player.getName(), itemStack, rewardedDays));
+    }
+
+    log.info(
+        "{} player {} daily reward for {} days with {} ...",
+        special ? "Special Reward" : "Reward",
+        player,
+        rewardedDays,
+        itemStack);
+    return !itemStack.isEmpty();
+  }
 
-    ticker = 0;
+  private static ItemStack getRewardForCurrentMonth(
+      boolean special, ServerPlayer player, int rewardedDays) {
+    return special
+        ? RewardData.get().getSpecialRewardForCurrentMonth(rewardedDays)
+        : RewardData.get()
+            .getRewardForCurrentMonth(
+                rewardedDays, player.getUUID(), player.getName().getString());
   }
 }
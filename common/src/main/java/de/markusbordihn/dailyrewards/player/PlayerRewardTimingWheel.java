@@ -0,0 +1,135 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel for the automatic player rewards. Each player is placed into the slot of
+ * its due tick, so advancing the wheel only touches the players of the current slot.
+ */
+public class PlayerRewardTimingWheel {
+
+  private static final int WHEEL_SIZE = 1024;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+  private final List<List<Entry>> slots = new ArrayList<>(WHEEL_SIZE);
+  private final Map<UUID, Entry> entries = new HashMap<>();
+  private long currentTick = 0;
+
+  public PlayerRewardTimingWheel() {
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      slots.add(new ArrayList<>());
+    }
+  }
+
+  public long getCurrentTick() {
+    return this.currentTick;
+  }
+
+  public synchronized void schedule(UUID uuid, long delayTicks) {
+    cancel(uuid);
+    Entry entry = new Entry(uuid, this.currentTick + Math.max(1, delayTicks));
+    this.entries.put(uuid, entry);
+    this.slots.get((int) (entry.dueTick & WHEEL_MASK)).add(entry);
+  }
+
+  public synchronized void cancel(UUID uuid) {
+    Entry entry = this.entries.remove(uuid);
+    if (entry != null) {
+      this.slots.get((int) (entry.dueTick & WHEEL_MASK)).remove(entry);
+    }
+  }
+
+  public synchronized boolean isScheduled(UUID uuid) {
+    return this.entries.containsKey(uuid);
+  }
+
+  public synchronized long getDueTick(UUID uuid) {
+    Entry entry = this.entries.get(uuid);
+    return entry != null ? entry.dueTick : -1;
+  }
+
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  public synchronized void clear() {
+    for (List<Entry> slot : this.slots) {
+      slot.clear();
+    }
+    this.entries.clear();
+  }
+
+  /** Advances the wheel up to the given tick and passes all due players to the consumer. */
+  public void advance(long tick, Consumer<UUID> dueConsumer) {
+    List<UUID> dueEntries = null;
+    synchronized (this) {
+      if (tick <= this.currentTick) {
+        return;
+      }
+
+      // Catch up missed ticks, but visit each slot at most once.
+      long fromTick = Math.max(this.currentTick + 1, tick - WHEEL_MASK);
+      for (long slotTick = fromTick; slotTick <= tick; slotTick++) {
+        List<Entry> slot = this.slots.get((int) (slotTick & WHEEL_MASK));
+        if (slot.isEmpty()) {
+          continue;
+        }
+        Iterator<Entry> iterator = slot.iterator();
+        while (iterator.hasNext()) {
+          Entry entry = iterator.next();
+          if (entry.dueTick <= tick) {
+            iterator.remove();
+            this.entries.remove(entry.uuid);
+            if (dueEntries == null) {
+              dueEntries = new ArrayList<>();
+            }
+            dueEntries.add(entry.uuid);
+          }
+        }
+      }
+      this.currentTick = tick;
+    }
+
+    // Run consumer outside of the lock, to allow rescheduling of due players.
+    if (dueEntries != null) {
+      for (UUID uuid : dueEntries) {
+        dueConsumer.accept(uuid);
+      }
+    }
+  }
+
+  private static final class Entry {
+    private final UUID uuid;
+    private final long dueTick;
+
+    private Entry(UUID uuid, long dueTick) {
+      this.uuid = uuid;
+      this.dueTick = dueTick;
+    }
+  }
+}
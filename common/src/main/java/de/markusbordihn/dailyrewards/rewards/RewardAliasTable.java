@@ -0,0 +1,92 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+
+/**
+ * Alias table for sampling an index with the given weights in constant time (Vose's alias method).
+ * The table is immutable and can be shared, the random source is passed with every draw.
+ */
+public class RewardAliasTable {
+
+  private final double[] probabilities;
+  private final int[] aliases;
+  private final boolean empty;
+
+  public RewardAliasTable(double[] weights) {
+    int size = weights.length;
+    this.probabilities = new double[size];
+    this.aliases = new int[size];
+    double totalWeight = 0;
+    for (double weight : weights) {
+      totalWeight += Math.max(0, weight);
+    }
+    // Without any positive weight there is nothing to sample, e.g. all weights are zero.
+    this.empty = size == 0 || totalWeight <= 0;
+    if (this.empty) {
+      return;
+    }
+
+    // Scale the weights to an average of 1 and pair every small column with a large one.
+    double[] scaledWeights = new double[size];
+    Deque<Integer> small = new ArrayDeque<>();
+    Deque<Integer> large = new ArrayDeque<>();
+    for (int i = 0; i < size; i++) {
+      scaledWeights[i] = Math.max(0, weights[i]) * size / totalWeight;
+      (scaledWeights[i] < 1 ? small : large).push(i);
+    }
+    while (!small.isEmpty() && !large.isEmpty()) {
+      int smallIndex = small.pop();
+      int largeIndex = large.pop();
+      this.probabilities[smallIndex] = scaledWeights[smallIndex];
+      this.aliases[smallIndex] = largeIndex;
+      scaledWeights[largeIndex] = scaledWeights[largeIndex] + scaledWeights[smallIndex] - 1;
+      (scaledWeights[largeIndex] < 1 ? small : large).push(largeIndex);
+    }
+
+    // Remaining columns are full, apart from rounding errors.
+    while (!large.isEmpty()) {
+      this.probabilities[large.pop()] = 1;
+    }
+    while (!small.isEmpty()) {
+      this.probabilities[small.pop()] = 1;
+    }
+  }
+
+  public int size() {
+    return this.probabilities.length;
+  }
+
+  public boolean isEmpty() {
+    return this.empty;
+  }
+
+  /** Returns a random index according to the weights, the table must not be empty. */
+  public int sample(SplittableRandom random) {
+    if (this.empty) {
+      throw new IllegalStateException("Unable to sample from an alias table without weights!");
+    }
+    int column = random.nextInt(this.probabilities.length);
+    return random.nextDouble() < this.probabilities[column] ? column : this.aliases[column];
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import net.minecraft.server.MinecraftServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Central clock for the rewards. The current date is read once per server tick and all reward
+ * related code is using the same cached {@link RewardDate} snapshot for the whole tick. Listeners
+ * are informed on the server thread, if the day or month changes.
+ */
+public class RewardClock {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private static final List<Consumer<RewardDate>> dayChangeListeners =
+      new CopyOnWriteArrayList<>();
+  private static final List<Consumer<RewardDate>> monthChangeListeners =
+      new CopyOnWriteArrayList<>();
+  private static volatile RewardDate currentDate = RewardDate.of(LocalDate.now());
+  private static volatile long nextDayMillis = getNextDayMillis(LocalDate.now());
+  private static volatile boolean serverTicking = false;
+
+  protected RewardClock() {}
+
+  public static void handleServerTickEvent(MinecraftServer server) {
+    serverTicking = true;
+    if (System.currentTimeMillis() >= nextDayMillis) {
+      updateCurrentDate();
+    }
+  }
+
+  public static void handleServerStoppedEvent(MinecraftServer server) {
+    serverTicking = false;
+  }
+
+  public static RewardDate getCurrentDate() {
+    // Without a ticking server (e.g. on the client) the date is verified on access.
+    if (!serverTicking && System.currentTimeMillis() >= nextDayMillis) {
+      updateCurrentDate();
+    }
+    return currentDate;
+  }
+
+  public static void registerDayChangeListener(Consumer<RewardDate> listener) {
+    dayChangeListeners.add(listener);
+  }
+
+  public static void registerMonthChangeListener(Consumer<RewardDate> listener) {
+    monthChangeListeners.add(listener);
+  }
+
+  private static synchronized void updateCurrentDate() {
+    LocalDate localDate = LocalDate.now();
+    RewardDate previousDate = currentDate;
+    RewardDate newDate = RewardDate.of(localDate);
+    nextDayMillis = getNextDayMillis(localDate);
+    if (newDate.equals(previousDate)) {
+      return;
+    }
+    currentDate = newDate;
+
+    // Only inform listeners from the server thread.
+    if (!serverTicking) {
+      return;
+    }
+    log.info("{} Day changed from {} to {}.", Constants.LOG_NAME, previousDate, newDate);
+    for (Consumer<RewardDate> listener : dayChangeListeners) {
+      listener.accept(newDate);
+    }
+    if (!newDate.isSameMonth(previousDate)) {
+      log.info("{} Month changed from {} to {}.", Constants.LOG_NAME, previousDate, newDate);
+      for (Consumer<RewardDate> listener : monthChangeListeners) {
+        listener.accept(newDate);
+      }
+    }
+  }
+
+  private static long getNextDayMillis(LocalDate localDate) {
+    return localDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import de.markusbordihn.dailyrewards.data.RewardUserRecord;
+import java.time.LocalDate;
+
+/** Immutable snapshot of a calendar day, used as consistent date for the rewards. */
+public record RewardDate(int year, int month, int day, int epochDay, int daysInMonth) {
+
+  public static RewardDate of(LocalDate localDate) {
+    return new RewardDate(
+        localDate.getYear(),
+        localDate.getMonthValue(),
+        localDate.getDayOfMonth(),
+        (int) localDate.toEpochDay(),
+        localDate.lengthOfMonth());
+  }
+
+  public int yearMonthKey() {
+    return RewardUserRecord.getYearMonthKey(year, month);
+  }
+
+  public boolean isSameMonth(RewardDate rewardDate) {
+    return rewardDate != null && rewardDate.year == this.year && rewardDate.month == this.month;
+  }
+
+  @Override
+  public String toString() {
+    return year + "-" + month + "-" + day;
+  }
+}
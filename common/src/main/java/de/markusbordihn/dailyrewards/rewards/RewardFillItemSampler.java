@@ -0,0 +1,198 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import static de.markusbordihn.dailyrewards.config.ModConfigs.COMMON;
+
+import de.markusbordihn.dailyrewards.Constants;
+import de.markusbordihn.dailyrewards.config.ModConfigs;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Weighted sampling of the fill items with precomputed alias tables. The pool is chosen with the
+ * configured rare and loot bag chances, the item within a pool is weighted by the number of its
+ * entries in the config list. Rare and loot bag items are drawn without replacement per month.
+ *
+ * <p>The sampler is built once per config generation and is shared, the state of a single month
+ * is kept in a {@link Session}.
+ */
+public class RewardFillItemSampler {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private static final int NORMAL_POOL = 0;
+  private static final int RARE_POOL = 1;
+  private static final int LOOT_BAG_POOL = 2;
+  private static final int MAX_REJECTIONS = 8;
+  private static RewardFillItemSampler sampler;
+  private static int samplerGeneration = -1;
+
+  private final RewardAliasTable poolTable;
+  private final Pool[] pools;
+
+  private RewardFillItemSampler() {
+    this.pools =
+        new Pool[] {
+          new Pool(Rewards.getNormalFillItems(), false),
+          new Pool(Rewards.getRareFillItems(), true),
+          new Pool(Rewards.getLootBagFillItems(), true)
+        };
+
+    // Same chances as before: rare items first, loot bag items for the remaining draws.
+    double rareWeight = getChanceWeight(this.pools[RARE_POOL], COMMON.rareFillItemsChance);
+    double lootBagWeight =
+        (1 - rareWeight)
+            * getChanceWeight(this.pools[LOOT_BAG_POOL], COMMON.lootBagFillItemsChance);
+    double normalWeight = 1 - rareWeight - lootBagWeight;
+    this.poolTable = new RewardAliasTable(new double[] {normalWeight, rareWeight, lootBagWeight});
+  }
+
+  public static synchronized RewardFillItemSampler get() {
+    if (sampler == null || samplerGeneration != ModConfigs.getGeneration()) {
+      sampler = new RewardFillItemSampler();
+      samplerGeneration = ModConfigs.getGeneration();
+    }
+    return sampler;
+  }
+
+  public Session newSession(SplittableRandom random) {
+    return new Session(random);
+  }
+
+  private static double getChanceWeight(Pool pool, int chance) {
+    return pool.isEmpty() || chance <= 0 ? 0 : 1.0 / chance;
+  }
+
+  /** Draws the fill items of one month. */
+  public class Session {
+
+    private final SplittableRandom random;
+    private final BitSet[] drawnItems = {new BitSet(), new BitSet(), new BitSet()};
+
+    private Session(SplittableRandom random) {
+      this.random = random;
+    }
+
+    public ItemStack next() {
+      int poolIndex = poolTable.sample(this.random);
+      ItemStack itemStack = pools[poolIndex].draw(this.random, this.drawnItems[poolIndex]);
+      if (itemStack == null && poolIndex != NORMAL_POOL) {
+        log.debug("All fill items of pool {} were already used, using normal item.", poolIndex);
+        itemStack = pools[NORMAL_POOL].draw(this.random, this.drawnItems[NORMAL_POOL]);
+      }
+      if (itemStack == null) {
+        log.error("Unable to find any fill item, will use {} instead!", Items.DIRT);
+        itemStack = RewardItemPool.intern(new ItemStack(Items.DIRT));
+      }
+      return itemStack;
+    }
+  }
+
+  /** Distinct items of a fill item list, with the number of their entries as weight. */
+  private static class Pool {
+
+    private final List<ItemStack> items = new ArrayList<>();
+    private final double[] weights;
+    private final double totalWeight;
+    private final RewardAliasTable aliasTable;
+    private final boolean withoutReplacement;
+
+    private Pool(List<ItemStack> configItems, boolean withoutReplacement) {
+      // Equal entries are merged by item, count and NBT, even if they are not interned.
+      Map<RewardItemPool.TemplateKey, Integer> itemIndex = new HashMap<>();
+      List<Double> itemWeights = new ArrayList<>();
+      for (ItemStack itemStack : configItems) {
+        RewardItemPool.TemplateKey templateKey = RewardItemPool.TemplateKey.of(itemStack);
+        Integer index = itemIndex.get(templateKey);
+        if (index == null) {
+          itemIndex.put(templateKey, this.items.size());
+          this.items.add(itemStack);
+          itemWeights.add(1.0);
+        } else {
+          itemWeights.set(index, itemWeights.get(index) + 1);
+        }
+      }
+      this.weights = itemWeights.stream().mapToDouble(Double::doubleValue).toArray();
+      this.totalWeight = configItems.size();
+      this.aliasTable = new RewardAliasTable(this.weights);
+      this.withoutReplacement = withoutReplacement;
+    }
+
+    private boolean isEmpty() {
+      return this.items.isEmpty();
+    }
+
+    /** Draws an item or returns null, if all items were already drawn without replacement. */
+    private ItemStack draw(SplittableRandom random, BitSet drawnItems) {
+      if (isEmpty()) {
+        return null;
+      }
+      if (!this.withoutReplacement) {
+        return this.items.get(this.aliasTable.sample(random));
+      }
+      if (drawnItems.cardinality() >= this.items.size()) {
+        return null;
+      }
+
+      // Rejection sampling is constant time as long as only a few items were drawn, otherwise
+      // the item is picked from the remaining weights.
+      int index = -1;
+      for (int attempt = 0; attempt < MAX_REJECTIONS && index < 0; attempt++) {
+        int candidate = this.aliasTable.sample(random);
+        if (!drawnItems.get(candidate)) {
+          index = candidate;
+        }
+      }
+      if (index < 0) {
+        index = drawRemaining(random, drawnItems);
+      }
+      drawnItems.set(index);
+      return this.items.get(index);
+    }
+
+    private int drawRemaining(SplittableRandom random, BitSet drawnItems) {
+      double remainingWeight = this.totalWeight;
+      for (int i = drawnItems.nextSetBit(0); i >= 0; i = drawnItems.nextSetBit(i + 1)) {
+        remainingWeight -= this.weights[i];
+      }
+      double target = random.nextDouble() * remainingWeight;
+      int lastIndex = -1;
+      for (int i = drawnItems.nextClearBit(0);
+          i < this.items.size();
+          i = drawnItems.nextClearBit(i + 1)) {
+        lastIndex = i;
+        target -= this.weights[i];
+        if (target < 0) {
+          return i;
+        }
+      }
+      return lastIndex;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Pool of immutable reward item templates. Identical item, count and NBT combinations are only
+ * stored once and are shared by the month rewards and the user records.
+ *
+ * <p>Templates must never be modified. Reward items are only copied, when they are placed into a
+ * container or inventory, which is already done by the menus over the sync data, or when they are
+ * handed out by {@link de.markusbordihn.dailyrewards.data.RewardData}.
+ */
+public class RewardItemPool {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  // Upper limit for templates, to avoid unbounded growth with many unique NBT items.
+  private static final int MAX_TEMPLATES = 4096;
+  private static final Map<TemplateKey, ItemStack> templates = new ConcurrentHashMap<>();
+
+  protected RewardItemPool() {}
+
+  /** Returns the shared template for the item stack, the given item stack is not modified. */
+  public static ItemStack intern(ItemStack itemStack) {
+    if (itemStack == null || itemStack.isEmpty()) {
+      return ItemStack.EMPTY;
+    }
+    ItemStack template = templates.get(TemplateKey.of(itemStack));
+    if (template != null) {
+      return template;
+    }
+    if (templates.size() >= MAX_TEMPLATES) {
+      log.debug("Reward item pool is full, will not intern {} ...", itemStack);
+      return itemStack.copy();
+    }
+
+    // The key needs its own copy of the tag, because the tag of the given item stack is mutable.
+    ItemStack newTemplate = itemStack.copy();
+    return templates.computeIfAbsent(TemplateKey.of(newTemplate), key -> newTemplate);
+  }
+
+  public static List<ItemStack> internAll(List<ItemStack> itemStacks) {
+    List<ItemStack> internedItemStacks = new ArrayList<>(itemStacks.size());
+    for (ItemStack itemStack : itemStacks) {
+      internedItemStacks.add(intern(itemStack));
+    }
+    return internedItemStacks;
+  }
+
+  public static int size() {
+    return templates.size();
+  }
+
+  /**
+   * Item, count and NBT of an item stack. The key is sharing the tag of the item stack, so it is
+   * only valid as long as the item stack is not modified.
+   */
+  record TemplateKey(Item item, int count, CompoundTag tag) {
+
+    static TemplateKey of(ItemStack itemStack) {
+      return new TemplateKey(itemStack.getItem(), itemStack.getCount(), itemStack.getTag());
+    }
+  }
+}
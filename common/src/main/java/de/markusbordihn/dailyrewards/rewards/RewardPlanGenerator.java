@@ -0,0 +1,119 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import static de.markusbordihn.dailyrewards.config.ModConfigs.COMMON;
+
+import de.markusbordihn.dailyrewards.Constants;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.item.ItemStack;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Generates the normal and special reward plans of a month on a background thread, so that the
+ * plans of the next month are already available before the month starts.
+ */
+public class RewardPlanGenerator {
+
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+
+  private static final Set<String> scheduledPlans = ConcurrentHashMap.newKeySet();
+  private static final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, Constants.LOG_NAME + " Reward Plan Generator");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  protected RewardPlanGenerator() {}
+
+  /** Version of the plans for the month, which changes with every relevant config change. */
+  public static int getPlanVersion(int month) {
+    return Objects.hash(
+        Rewards.getRewardItemConfigForMonth(month),
+        SpecialRewards.getSpecialRewardItemConfigForMonth(month),
+        COMMON.useFillItems,
+        COMMON.normalFillItems,
+        COMMON.rareFillItems,
+        COMMON.rareFillItemsChance,
+        COMMON.lootBagFillItems,
+        COMMON.lootBagFillItemsChance,
+        COMMON.shuffleRewardsItems,
+        COMMON.shuffleRewardsSpecialItems,
+        COMMON.rewardSeed,
+        RewardPools.get().getVersion());
+  }
+
+  public static RewardPlan generate(int year, int month) {
+    return new RewardPlan(
+        year,
+        month,
+        getPlanVersion(month),
+        RewardRandom.getSeed(year, month),
+        Rewards.calculateRewardItemsForMonth(year, month),
+        SpecialRewards.calculateSpecialRewardItemsForMonth(year, month));
+  }
+
+  /**
+   * Generates the plans for the month in the background and passes them to the publisher on the
+   * server thread. Requests for a month which is already scheduled are ignored.
+   */
+  public static void schedule(
+      MinecraftServer server, int year, int month, Consumer<RewardPlan> publisher) {
+    String planKey = year + "-" + month;
+    if (server == null || !scheduledPlans.add(planKey)) {
+      return;
+    }
+    log.info("{} pre-generating reward plans for {} ...", Constants.LOG_NAME, planKey);
+    executor.execute(
+        () -> {
+          try {
+            RewardPlan rewardPlan = generate(year, month);
+            server.execute(
+                () -> {
+                  scheduledPlans.remove(planKey);
+                  publisher.accept(rewardPlan);
+                });
+          } catch (RuntimeException e) {
+            scheduledPlans.remove(planKey);
+            log.error(
+                "{} unable to pre-generate reward plans for {}:", Constants.LOG_NAME, planKey, e);
+          }
+        });
+  }
+
+  /** Normal and special reward items of a month, generated with the given version and seed. */
+  public record RewardPlan(
+      int year,
+      int month,
+      int version,
+      long seed,
+      List<ItemStack> rewardItems,
+      List<ItemStack> specialRewardItems) {}
+}
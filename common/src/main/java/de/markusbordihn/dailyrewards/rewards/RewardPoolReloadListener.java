@@ -0,0 +1,185 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.serialization.JsonOps;
+import de.markusbordihn.dailyrewards.Constants;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagParser;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.server.packs.resources.SimpleJsonResourceReloadListener;
+import net.minecraft.util.GsonHelper;
+import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Loads the reward pools from {@code data/<namespace>/daily_rewards/reward_pools/*.json}, e.g.
+ *
+ * <pre>{@code
+ * {
+ *   "type": "month",
+ *   "month": 12,
+ *   "replace": false,
+ *   "items": [
+ *     "minecraft:diamond:2",
+ *     {"item": "minecraft:diamond_sword", "count": 1, "nbt": "{Damage:5}"}
+ *   ]
+ * }
+ * }</pre>
+ *
+ * <p>Supported types are month, special_month (with an optional players list), normal_fill,
+ * rare_fill, loot_bag_fill and user_month. A user_month pool with a players list of names or UUIDs
+ * overrides the month rewards of these players day by day. Items are parsed and validated once per
+ * reload, invalid items are skipped.
+ */
+public class RewardPoolReloadListener extends SimpleJsonResourceReloadListener {
+
+  public static final String DIRECTORY = Constants.MOD_ID + "/reward_pools";
+  protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
+  private static final Gson GSON = new GsonBuilder().create();
+
+  public RewardPoolReloadListener() {
+    super(GSON, DIRECTORY);
+  }
+
+  @Override
+  protected void apply(
+      Map<ResourceLocation, JsonElement> poolFiles,
+      ResourceManager resourceManager,
+      ProfilerFiller profiler) {
+    RewardPools.Builder builder = new RewardPools.Builder();
+    for (Map.Entry<ResourceLocation, JsonElement> poolFile : new TreeMap<>(poolFiles).entrySet()) {
+      try {
+        JsonObject poolJson = GsonHelper.convertToJsonObject(poolFile.getValue(), "pool");
+        parsePool(poolFile.getKey(), poolJson, builder);
+      } catch (RuntimeException e) {
+        log.error("Unable to load reward pool {}: {}", poolFile.getKey(), e.getMessage());
+      }
+    }
+    RewardPools rewardPools = builder.build();
+    RewardPools.publish(rewardPools);
+    log.info(
+        "{} loaded {} reward pools from {} files.",
+        Constants.LOG_NAME,
+        rewardPools.size(),
+        poolFiles.size());
+  }
+
+  private static void parsePool(
+      ResourceLocation poolId, JsonObject poolJson, RewardPools.Builder builder) {
+    String type = GsonHelper.getAsString(poolJson, "type");
+    String key =
+        switch (type) {
+          case RewardPools.MONTH, RewardPools.SPECIAL_MONTH, RewardPools.USER_MONTH -> {
+            int month = GsonHelper.getAsInt(poolJson, "month");
+            if (month < 1 || month > 12) {
+              throw new JsonSyntaxException("Invalid month " + month);
+            }
+            yield RewardPools.getKey(type, month);
+          }
+          case RewardPools.NORMAL_FILL, RewardPools.RARE_FILL, RewardPools.LOOT_BAG_FILL -> type;
+          default -> throw new JsonSyntaxException("Unknown reward pool type " + type);
+        };
+
+    List<ItemStack> items = new ArrayList<>();
+    for (JsonElement itemJson : GsonHelper.getAsJsonArray(poolJson, "items", new JsonArray())) {
+      try {
+        items.addAll(parseItem(itemJson));
+      } catch (RuntimeException e) {
+        log.error("Skipping invalid reward item {} in {}: {}", itemJson, poolId, e.getMessage());
+      }
+    }
+    List<String> players = new ArrayList<>();
+    if (RewardPools.SPECIAL_MONTH.equals(type) || RewardPools.USER_MONTH.equals(type)) {
+      for (JsonElement playerJson :
+          GsonHelper.getAsJsonArray(poolJson, "players", new JsonArray())) {
+        players.add(GsonHelper.convertToString(playerJson, "player"));
+      }
+    }
+    if (RewardPools.USER_MONTH.equals(type)) {
+      if (players.isEmpty()) {
+        throw new JsonSyntaxException("Missing players for user pool " + poolId);
+      }
+      int month = GsonHelper.getAsInt(poolJson, "month");
+      for (String player : players) {
+        builder.addUser(player, month, items);
+      }
+      return;
+    }
+    builder.add(key, items, players, GsonHelper.getAsBoolean(poolJson, "replace", false));
+  }
+
+  private static List<ItemStack> parseItem(JsonElement itemJson) {
+    // Short config format like "minecraft:diamond:2".
+    if (GsonHelper.isStringValue(itemJson)) {
+      return RewardsItems.parseConfigItems(List.of(itemJson.getAsString()));
+    }
+
+    JsonObject itemObject = GsonHelper.convertToJsonObject(itemJson, "item");
+    ResourceLocation itemId = new ResourceLocation(GsonHelper.getAsString(itemObject, "item"));
+    Item item = BuiltInRegistries.ITEM.getOptional(itemId).orElse(Items.AIR);
+    if (item == Items.AIR) {
+      throw new JsonSyntaxException("Unknown item " + itemId);
+    }
+    int count = GsonHelper.getAsInt(itemObject, "count", 1);
+    if (count < 1 || count > item.getMaxStackSize()) {
+      throw new JsonSyntaxException("Invalid count " + count + " for " + itemId);
+    }
+    ItemStack itemStack = new ItemStack(item, count);
+    if (itemObject.has("nbt")) {
+      itemStack.setTag(parseTag(itemObject.get("nbt")));
+    }
+    return List.of(RewardItemPool.intern(itemStack));
+  }
+
+  private static CompoundTag parseTag(JsonElement tagJson) {
+    if (GsonHelper.isStringValue(tagJson)) {
+      try {
+        return TagParser.parseTag(tagJson.getAsString());
+      } catch (CommandSyntaxException e) {
+        throw new JsonSyntaxException("Invalid nbt " + e.getMessage());
+      }
+    }
+    Tag tag = JsonOps.INSTANCE.convertTo(NbtOps.INSTANCE, tagJson);
+    if (tag instanceof CompoundTag compoundTag) {
+      return compoundTag;
+    }
+    throw new JsonSyntaxException("Invalid nbt " + tagJson);
+  }
+}
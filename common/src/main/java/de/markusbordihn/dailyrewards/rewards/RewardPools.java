@@ -0,0 +1,207 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import de.markusbordihn.dailyrewards.config.ModConfigs;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Compiled reward pools from the datapacks, which are added to or are replacing the reward lists of
+ * the config. The pools are immutable and are swapped as a whole after a reload, already generated
+ * month rewards and player records are not changed by a reload.
+ */
+public class RewardPools {
+
+  public static final String MONTH = "month";
+  public static final String SPECIAL_MONTH = "special_month";
+  public static final String NORMAL_FILL = "normal_fill";
+  public static final String RARE_FILL = "rare_fill";
+  public static final String LOOT_BAG_FILL = "loot_bag_fill";
+  public static final String USER_MONTH = "user_month";
+
+  private static volatile RewardPools current = new RewardPools(Map.of(), Map.of());
+
+  private final Map<String, Pool> pools;
+  private final Map<String, List<ItemStack>> userPools;
+  private final int version;
+
+  private RewardPools(Map<String, Pool> pools, Map<String, List<ItemStack>> userPools) {
+    this.pools = pools;
+    this.userPools = userPools;
+    List<Object> versionParts = new ArrayList<>();
+    pools.entrySet().stream()
+        .sorted(Map.Entry.comparingByKey())
+        .forEach(
+            entry -> {
+              versionParts.add(entry.getKey());
+              versionParts.add(entry.getValue().replace);
+              versionParts.add(entry.getValue().players);
+              for (ItemStack itemStack : entry.getValue().items) {
+                versionParts.add(BuiltInRegistries.ITEM.getKey(itemStack.getItem()));
+                versionParts.add(itemStack.getCount());
+                versionParts.add(itemStack.getTag());
+              }
+            });
+    this.version = versionParts.hashCode();
+  }
+
+  public static RewardPools get() {
+    return current;
+  }
+
+  /** Replaces the current pools and invalidates all caches, which are based on the reward lists. */
+  public static void publish(RewardPools rewardPools) {
+    current = rewardPools;
+    ModConfigs.invalidateCaches();
+  }
+
+  public static String getKey(String type, int month) {
+    return type + ":" + month;
+  }
+
+  /** Key of a user pool, the user is a player name or UUID and is matched case-insensitive. */
+  public static String getUserKey(String user, int month) {
+    return getKey(USER_MONTH, month) + ":" + user.trim().toLowerCase(Locale.ROOT);
+  }
+
+  /** Version of the pools, which changes with every change of the pool content. */
+  public int getVersion() {
+    return this.version;
+  }
+
+  public int size() {
+    return this.pools.size() + this.userPools.size();
+  }
+
+  /**
+   * Returns the rewards of the user pool for the player and month or null, if there is no such
+   * pool. User pools are overriding the month rewards day by day and are not part of the version,
+   * because they are resolved when the reward is granted and not when the month is generated.
+   */
+  public List<ItemStack> getUserItems(int month, UUID uuid, String playerName) {
+    List<ItemStack> userItems =
+        uuid != null ? this.userPools.get(getUserKey(uuid.toString(), month)) : null;
+    if (userItems == null && playerName != null) {
+      userItems = this.userPools.get(getUserKey(playerName, month));
+    }
+    return userItems;
+  }
+
+  /** Returns the config items combined with the items of the pool, if there is such a pool. */
+  public List<ItemStack> resolveItems(String key, List<ItemStack> configItems) {
+    Pool pool = this.pools.get(key);
+    if (pool == null) {
+      return configItems;
+    }
+    if (pool.replace || configItems.isEmpty()) {
+      return pool.items;
+    }
+    return pool.getMergedItems(configItems);
+  }
+
+  /** Returns the config players combined with the players of the pool. */
+  public List<String> resolvePlayers(String key, List<String> configPlayers) {
+    Pool pool = this.pools.get(key);
+    if (pool == null || pool.players.isEmpty()) {
+      return configPlayers;
+    }
+    if (pool.replace || configPlayers == null || configPlayers.isEmpty()) {
+      return pool.players;
+    }
+    List<String> players = new ArrayList<>(configPlayers);
+    players.addAll(pool.players);
+    return players;
+  }
+
+  /** Collects the entries of all pool files, files for the same pool are merged in order. */
+  public static class Builder {
+
+    private final Map<String, List<ItemStack>> items = new HashMap<>();
+    private final Map<String, List<String>> players = new HashMap<>();
+    private final Map<String, Boolean> replace = new HashMap<>();
+    private final Map<String, List<ItemStack>> userItems = new HashMap<>();
+
+    public void add(
+        String key, List<ItemStack> poolItems, List<String> poolPlayers, boolean replacePool) {
+      this.items.computeIfAbsent(key, id -> new ArrayList<>()).addAll(poolItems);
+      this.players.computeIfAbsent(key, id -> new ArrayList<>()).addAll(poolPlayers);
+      this.replace.merge(key, replacePool, Boolean::logicalOr);
+    }
+
+    public void addUser(String user, int month, List<ItemStack> poolItems) {
+      this.userItems
+          .computeIfAbsent(getUserKey(user, month), id -> new ArrayList<>())
+          .addAll(poolItems);
+    }
+
+    public RewardPools build() {
+      Map<String, Pool> pools = new HashMap<>();
+      for (Map.Entry<String, List<ItemStack>> entry : this.items.entrySet()) {
+        String key = entry.getKey();
+        pools.put(
+            key,
+            new Pool(
+                Collections.unmodifiableList(entry.getValue()),
+                List.copyOf(this.players.get(key)),
+                this.replace.get(key)));
+      }
+      Map<String, List<ItemStack>> userPools = new HashMap<>();
+      this.userItems.forEach((key, poolItems) -> userPools.put(key, List.copyOf(poolItems)));
+      return new RewardPools(Map.copyOf(pools), Map.copyOf(userPools));
+    }
+  }
+
+  private static class Pool {
+
+    private final List<ItemStack> items;
+    private final List<String> players;
+    private final boolean replace;
+    private volatile MergedItems mergedItems;
+
+    private Pool(List<ItemStack> items, List<String> players, boolean replace) {
+      this.items = items;
+      this.players = players;
+      this.replace = replace;
+    }
+
+    /** Config items are cached per config generation, so the merged list is cached as well. */
+    private List<ItemStack> getMergedItems(List<ItemStack> configItems) {
+      MergedItems cachedItems = this.mergedItems;
+      if (cachedItems != null && cachedItems.configItems() == configItems) {
+        return cachedItems.items();
+      }
+      List<ItemStack> items = new ArrayList<>(configItems);
+      items.addAll(this.items);
+      cachedItems = new MergedItems(configItems, Collections.unmodifiableList(items));
+      this.mergedItems = cachedItems;
+      return cachedItems.items();
+    }
+  }
+
+  private record MergedItems(List<ItemStack> configItems, List<ItemStack> items) {}
+}
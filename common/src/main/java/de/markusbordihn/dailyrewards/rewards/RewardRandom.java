@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import static de.markusbordihn.dailyrewards.config.ModConfigs.COMMON;
+
+import de.markusbordihn.dailyrewards.data.RewardUserRecord;
+import dev.architectury.utils.GameInstance;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * Seeded random sources for the reward generation. Every month gets its own generator, derived
+ * from the server seed and the month, so the rewards of a month can be generated in parallel and
+ * are identical when they are generated again.
+ */
+public class RewardRandom {
+
+  public static final long REWARDS_STREAM = 1;
+  public static final long SPECIAL_REWARDS_STREAM = 2;
+  public static final long FILL_STREAM = 3;
+
+  protected RewardRandom() {}
+
+  /** Configured reward seed or the world seed, if no reward seed is configured. */
+  public static long getServerSeed() {
+    if (COMMON.rewardSeed != 0) {
+      return COMMON.rewardSeed;
+    }
+    MinecraftServer server = GameInstance.getServer();
+    return server != null ? server.getWorldData().worldGenOptions().seed() : 0;
+  }
+
+  public static long getSeed(int year, int month) {
+    return mix(getServerSeed() * 31 + RewardUserRecord.getYearMonthKey(year, month));
+  }
+
+  /** Returns a new generator for the month, streams are used to separate independent uses. */
+  public static SplittableRandom forMonth(int year, int month, long stream) {
+    return new SplittableRandom(getSeed(year, month) ^ mix(stream));
+  }
+
+  /** Fisher-Yates shuffle with the given generator, like {@link Collections#shuffle(List)}. */
+  public static <T> void shuffle(List<T> list, SplittableRandom random) {
+    for (int i = list.size() - 1; i > 0; i--) {
+      Collections.swap(list, i, random.nextInt(i + 1));
+    }
+  }
+
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+}
@@ -28,7 +28,6 @@ import java.util.*;
 import java.util.stream.Collectors;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.item.ItemStack;
-import net.minecraft.world.item.Items;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -36,8 +35,6 @@ public class Rewards {
 
   protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
 
-  protected static final Random random = new Random();
-
   protected Rewards() {}
 
   public static void handleServerAboutToStartEvent(MinecraftServer server) {
@@ -50,10 +47,15 @@ public class Rewards {
   }
 
   public static List<ItemStack> calculateRewardItemsForMonth(int month) {
-    YearMonth yearMonth = YearMonth.of(getCurrentYear(), month);
+    return calculateRewardItemsForMonth(getCurrentYear(), month);
+  }
+
+  public static List<ItemStack> calculateRewardItemsForMonth(int year, int month) {
+    YearMonth yearMonth = YearMonth.of(year, month);
     int numberOfDays = yearMonth.lengthOfMonth();
     log.info("Calculate Reward items for month {} with {} days ...", month, numberOfDays);
-    List<ItemStack> rewardItemsForMonth = getRewardItemForMonth(month);
+    List<ItemStack> rewardItemsForMonth = new ArrayList<>(getRewardItemTemplatesForMonth(month));
+    SplittableRandom random = RewardRandom.forMonth(year, month, RewardRandom.REWARDS_STREAM);
 
     // Early return if we have matching items without shuffle.
     if (Boolean.TRUE.equals(!COMMON.useFillItems) || rewardItemsForMonth.size() >= numberOfDays) {
@@ -74,7 +76,7 @@ public class Rewards {
           rewardItemsForMonth.stream().limit(numberOfDays).collect(Collectors.toList());
       if (Boolean.TRUE.equals(COMMON.shuffleRewardsItems)) {
         log.info("Shuffle reward items for month {} ...", month);
-        Collections.shuffle(rewardItems);
+        RewardRandom.shuffle(rewardItems, random);
       }
       return rewardItems;
     }
@@ -82,128 +84,135 @@ public class Rewards {
     // Fill missing days with fill items.
     int numRewardItems = rewardItemsForMonth.size();
     int numMissingRewardItems = numberOfDays - numRewardItems;
-    List<ItemStack> normalFillItems = getNormalFillItems();
-    List<ItemStack> rareFillItems = getRareFillItems();
-    List<ItemStack> lootBagFillItems = getLootBagFillItems();
-    Set<ItemStack> rareDuplicates = new HashSet<>();
-    Set<ItemStack> lootBagDuplicates = new HashSet<>();
-
-    // Chances for different items types.
-    int rareFillItemsChance = rareFillItems.isEmpty() ? 0 : COMMON.rareFillItemsChance;
-    int lootBackFillItemChance = lootBagFillItems.isEmpty() ? 0 : COMMON.lootBagFillItemsChance;
 
     // Fill missing reward items.
     log.warn(
         "Found {} missing days without any items, will try to use fill items ...",
         numMissingRewardItems);
+    RewardFillItemSampler.Session fillItems = RewardFillItemSampler.get().newSession(random);
     for (int i = 0; i < numMissingRewardItems; i++) {
-      ItemStack fillItem = null;
-
-      // There is a 1:x (1:7) chance to get an rare item instead of an normal item.
-      if (rareFillItemsChance > 0 && random.nextInt(rareFillItemsChance) == 0) {
-        ItemStack rareFillItem = rareFillItems.get(random.nextInt(rareFillItems.size()));
-        // Make sure we avoid duplicates of rare fill items.
-        if (!rareDuplicates.contains(rareFillItem)) {
-          fillItem = rareFillItem;
-          rareDuplicates.add(rareFillItem);
-        }
-      }
-
-      // There is a 1:x (1:15) chance to get an loot bag item instead of an normal
-      // item.
-      else if (lootBackFillItemChance > 0 && random.nextInt(lootBackFillItemChance) == 0) {
-        ItemStack lootBagFillItem = lootBagFillItems.get(random.nextInt(lootBagFillItems.size()));
-        // Make sure we avoid duplicates of lootBag fill items.
-        if (!lootBagDuplicates.contains(lootBagFillItem)) {
-          fillItem = lootBagFillItem;
-          lootBagDuplicates.add(lootBagFillItem);
-        }
-      }
-
-      // Make sure we have filled something.
-      if (fillItem == null) {
-        if (!normalFillItems.isEmpty()) {
-          fillItem = normalFillItems.get(random.nextInt(normalFillItems.size()));
-        } else {
-          log.error(
-              "Unable to find any fill item for {} of {} missing days, will use {} instead!",
-              i + 1,
-              numMissingRewardItems,
-              Items.DIRT);
-          fillItem = new ItemStack(Items.DIRT);
-        }
-      }
-
-      rewardItemsForMonth.add(fillItem);
+      rewardItemsForMonth.add(fillItems.next());
     }
 
     // Shuffle items before returning.
     if (Boolean.TRUE.equals(COMMON.shuffleRewardsItems)) {
       log.info("Shuffle reward items for month {} ...", month);
-      Collections.shuffle(rewardItemsForMonth);
+      RewardRandom.shuffle(rewardItemsForMonth, random);
     }
     return rewardItemsForMonth;
   }
 
   public static List<ItemStack> getRewardItemForMonth(int month) {
+    return RewardsItems.copyItems(getRewardItemTemplatesForMonth(month));
+  }
+
+  public static List<ItemStack> getRewardItemTemplatesForMonth(int month) {
+    return RewardPools.get()
+        .resolveItems(
+            RewardPools.getKey(RewardPools.MONTH, month),
+            RewardsItems.getConfigItems(getRewardItemConfigForMonth(month)));
+  }
+
+  public static List<String> getRewardItemConfigForMonth(int month) {
     return switch (month) {
-      case 1 -> RewardsItems.parseConfigItems(COMMON.rewardsJanuaryItems);
-      case 2 -> RewardsItems.parseConfigItems(COMMON.rewardsFebruaryItems);
-      case 3 -> RewardsItems.parseConfigItems(COMMON.rewardsMarchItems);
-      case 4 -> RewardsItems.parseConfigItems(COMMON.rewardsAprilItems);
-      case 5 -> RewardsItems.parseConfigItems(COMMON.rewardsMayItems);
-      case 6 -> RewardsItems.parseConfigItems(COMMON.rewardsJuneItems);
-      case 7 -> RewardsItems.parseConfigItems(COMMON.rewardsJulyItems);
-      case 8 -> RewardsItems.parseConfigItems(COMMON.rewardsAugustItems);
-      case 9 -> RewardsItems.parseConfigItems(COMMON.rewardsSeptemberItems);
-      case 10 -> RewardsItems.parseConfigItems(COMMON.rewardsOctoberItems);
-      case 11 -> RewardsItems.parseConfigItems(COMMON.rewardsNovemberItems);
-      case 12 -> RewardsItems.parseConfigItems(COMMON.rewardsDecemberItems);
-      default -> new ArrayList<>();
+      case 1 -> COMMON.rewardsJanuaryItems;
+      case 2 -> COMMON.rewardsFebruaryItems;
+      case 3 -> COMMON.rewardsMarchItems;
+      case 4 -> COMMON.rewardsAprilItems;
+      case 5 -> COMMON.rewardsMayItems;
+      case 6 -> COMMON.rewardsJuneItems;
+      case 7 -> COMMON.rewardsJulyItems;
+      case 8 -> COMMON.rewardsAugustItems;
+      case 9 -> COMMON.rewardsSeptemberItems;
+      case 10 -> COMMON.rewardsOctoberItems;
+      case 11 -> COMMON.rewardsNovemberItems;
+      case 12 -> COMMON.rewardsDecemberItems;
+      default -> List.of();
     };
   }
 
   public static List<ItemStack> getNormalFillItems() {
-    return RewardsItems.parseConfigItems(COMMON.normalFillItems);
+    return RewardPools.get()
+        .resolveItems(RewardPools.NORMAL_FILL, RewardsItems.getConfigItems(COMMON.normalFillItems));
   }
 
-  public static ItemStack getNormalFillItem() {
+  public static ItemStack getNormalFillItem(SplittableRandom random) {
     List<ItemStack> normalFillItems = getNormalFillItems();
-    return normalFillItems.get(random.nextInt(normalFillItems.size()));
+    return normalFillItems.get(random.nextInt(normalFillItems.size())).copy();
   }
 
   public static List<ItemStack> getRareFillItems() {
-    return RewardsItems.parseConfigItems(COMMON.rareFillItems);
+    return RewardPools.get()
+        .resolveItems(RewardPools.RARE_FILL, RewardsItems.getConfigItems(COMMON.rareFillItems));
   }
 
-  public static ItemStack getRareFillItem() {
+  public static ItemStack getRareFillItem(SplittableRandom random) {
     List<ItemStack> rareFillItems = getRareFillItems();
-    return rareFillItems.get(random.nextInt(rareFillItems.size()));
+    return rareFillItems.get(random.nextInt(rareFillItems.size())).copy();
   }
 
   public static List<ItemStack> getLootBagFillItems() {
-    return RewardsItems.parseConfigItems(COMMON.lootBagFillItems);
+    return RewardPools.get()
+        .resolveItems(
+            RewardPools.LOOT_BAG_FILL, RewardsItems.getConfigItems(COMMON.lootBagFillItems));
+  }
+
+  public static ItemStack getLootBagFillItem(SplittableRandom random) {
+    List<ItemStack> lootBagFillItems = getLootBagFillItems();
+    return lootBagFillItems.get(random.nextInt(lootBagFillItems.size())).copy();
   }
 
-  public static ItemStack getLootBagFillItem() {
-    List<ItemStack> lootBagFillItems = getRareFillItems();
-    return lootBagFillItems.get(random.nextInt(lootBagFillItems.size()));
+  public static RewardDate getCurrentDate() {
+    return RewardClock.getCurrentDate();
   }
 
   public static int getCurrentDay() {
-    return LocalDate.now().getDayOfMonth();
+    return RewardClock.getCurrentDate().day();
   }
 
   public static int getCurrentMonth() {
-    return LocalDate.now().getMonthValue();
+    return RewardClock.getCurrentDate().month();
   }
 
   public static int getCurrentYear() {
-    return LocalDate.now().getYear();
+    return RewardClock.getCurrentDate().year();
   }
 
   public static String getCurrentYearMonthDay() {
-    return getCurrentYear() + "-" + getCurrentMonth() + "-" + getCurrentDay();
+    return RewardClock.getCurrentDate().toString();
+  }
+
+  public static int getCurrentEpochDay() {
+    return RewardClock.getCurrentDate().epochDay();
+  }
+
+  public static String getYearMonthDay(int epochDay) {
+    if (epochDay <= 0) {
+      return "";
+    }
+    LocalDate localDate = LocalDate.ofEpochDay(epochDay);
+    return localDate.getYear() + "-" + localDate.getMonthValue() + "-" + localDate.getDayOfMonth();
+  }
+
+  public static int getEpochDay(String yearMonthDay) {
+    if (yearMonthDay == null || yearMonthDay.isEmpty()) {
+      return 0;
+    }
+    String[] dateParts = yearMonthDay.split("-");
+    if (dateParts.length != 3) {
+      return 0;
+    }
+    try {
+      return (int)
+          LocalDate.of(
+                  Integer.parseInt(dateParts[0]),
+                  Integer.parseInt(dateParts[1]),
+                  Integer.parseInt(dateParts[2]))
+              .toEpochDay();
+    } catch (RuntimeException e) {
+      log.error("Unable to parse year-month-day {}: {}", yearMonthDay, e.getMessage());
+      return 0;
+    }
   }
 
   public static int getDaysPerMonth(int year, int month) {
@@ -212,10 +221,11 @@ public class Rewards {
   }
 
   public static int getDaysCurrentMonth() {
-    return getDaysPerMonth(getCurrentYear(), getCurrentMonth());
+    return RewardClock.getCurrentDate().daysInMonth();
   }
 
   public static int getDaysLeftCurrentMonth() {
-    return getDaysCurrentMonth() - getCurrentDay();
+    RewardDate currentDate = RewardClock.getCurrentDate();
+    return currentDate.daysInMonth() - currentDate.day();
   }
 }
@@ -20,8 +20,12 @@
 package de.markusbordihn.dailyrewards.rewards;
 
 import de.markusbordihn.dailyrewards.Constants;
+import de.markusbordihn.dailyrewards.config.ModConfigs;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.item.Item;
@@ -34,8 +38,49 @@ public class RewardsItems {
 
   protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
 
+  // Parsed config items per config list, only valid for the cached config generation.
+  private static final Map<List<String>, List<ItemStack>> configItemsCache =
+      Collections.synchronizedMap(new IdentityHashMap<>());
+  private static int configItemsCacheGeneration = -1;
+
+  protected RewardsItems() {}
+
+  /**
+   * Returns the parsed items for the given config list. The returned list is shared and the items
+   * are templates of the {@link RewardItemPool}, both must not be modified.
+   */
+  public static List<ItemStack> getConfigItems(List<String> configItems) {
+    if (configItems == null || configItems.isEmpty()) {
+      return List.of();
+    }
+    synchronized (configItemsCache) {
+      if (configItemsCacheGeneration != ModConfigs.getGeneration()) {
+        log.debug("Clearing parsed config items cache after config reload ...");
+        configItemsCache.clear();
+        configItemsCacheGeneration = ModConfigs.getGeneration();
+      }
+      List<ItemStack> items = configItemsCache.get(configItems);
+      if (items == null) {
+        items = Collections.unmodifiableList(parseConfigItems(configItems));
+        configItemsCache.put(configItems, items);
+      }
+      return items;
+    }
+  }
+
+  public static List<ItemStack> copyItems(List<ItemStack> items) {
+    List<ItemStack> copiedItems = new ArrayList<>(items.size());
+    for (ItemStack itemStack : items) {
+      copiedItems.add(itemStack.copy());
+    }
+    return copiedItems;
+  }
+
   public static List<ItemStack> parseConfigItems(List<String> configItems) {
     List<ItemStack> items = new ArrayList<>();
+    if (configItems == null) {
+      return items;
+    }
 
     for (String configItem : configItems) {
       String itemName = configItem;
@@ -64,7 +109,7 @@ public class RewardsItems {
       } else {
         ItemStack itemStack = new ItemStack(item);
         itemStack.setCount(itemCount);
-        items.add(itemStack);
+        items.add(RewardItemPool.intern(itemStack));
       }
     }
 
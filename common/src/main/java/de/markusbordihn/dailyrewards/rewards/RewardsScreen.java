@@ -23,6 +23,7 @@ import de.markusbordihn.dailyrewards.data.RewardData;
 import de.markusbordihn.dailyrewards.data.RewardUserData;
 import de.markusbordihn.dailyrewards.data.SpecialRewardUserData;
 import de.markusbordihn.dailyrewards.menu.RewardCompactMenu;
+import de.markusbordihn.dailyrewards.menu.RewardMenu;
 import de.markusbordihn.dailyrewards.menu.RewardOverviewMenu;
 import de.markusbordihn.dailyrewards.menu.RewardSpecialOverviewMenu;
 import dev.architectury.registry.menu.ExtendedMenuProvider;
@@ -58,7 +59,7 @@ public class RewardsScreen {
 
             // Get user rewards
             int rewardedDays = RewardUserData.get().getRewardedDaysForCurrentMonth(uuid);
-            String lastRewardedDay = RewardUserData.get().getLastRewardedDayForCurrentMonth(uuid);
+            int lastRewardedDay = RewardUserData.get().getLastRewardedDayForCurrentMonth(uuid);
             CompoundTag userRewardsForCurrentMonth =
                 RewardUserData.get().getRewardsForCurrentMonthSyncData(uuid);
             CompoundTag rewardsForCurrentMonth =
@@ -67,7 +68,7 @@ public class RewardsScreen {
             // Get special user rewards
             int specialRewardedDays =
                 SpecialRewardUserData.get().getRewardedDaysForCurrentMonth(uuid);
-            String lastSpecialRewardedDay =
+            int lastSpecialRewardedDay =
                 SpecialRewardUserData.get().getLastRewardedDayForCurrentMonth(uuid);
             CompoundTag specialUserRewardsForCurrentMonth =
                 SpecialRewardUserData.get().getRewardsForCurrentMonthSyncData(uuid);
@@ -79,15 +80,18 @@ public class RewardsScreen {
 
             // User Rewards
             buffer.writeInt(rewardedDays);
-            buffer.writeUtf(lastRewardedDay);
+            buffer.writeInt(lastRewardedDay);
             buffer.writeNbt(userRewardsForCurrentMonth);
             buffer.writeNbt(rewardsForCurrentMonth);
 
             // Special User Rewards
             buffer.writeInt(specialRewardedDays);
-            buffer.writeUtf(lastSpecialRewardedDay);
+            buffer.writeInt(lastSpecialRewardedDay);
             buffer.writeNbt(specialUserRewardsForCurrentMonth);
             buffer.writeNbt(specialRewardsForCurrentMonth);
+
+            // Synced rewards are claimed through the shared store.
+            buffer.writeBoolean(RewardMenu.hasSharedStore());
           }
         };
 
@@ -115,7 +119,7 @@ public class RewardsScreen {
 
             // Get user rewards
             int rewardedDays = RewardUserData.get().getRewardedDaysForCurrentMonth(uuid);
-            String lastRewardedDay = RewardUserData.get().getLastRewardedDayForCurrentMonth(uuid);
+            int lastRewardedDay = RewardUserData.get().getLastRewardedDayForCurrentMonth(uuid);
             CompoundTag userRewardsForCurrentMonth =
                 RewardUserData.get().getRewardsForCurrentMonthSyncData(uuid);
             CompoundTag rewardsForCurrentMonth =
@@ -126,9 +130,12 @@ public class RewardsScreen {
 
             // User Rewards
             buffer.writeInt(rewardedDays);
-            buffer.writeUtf(lastRewardedDay);
+            buffer.writeInt(lastRewardedDay);
             buffer.writeNbt(userRewardsForCurrentMonth);
             buffer.writeNbt(rewardsForCurrentMonth);
+
+            // Synced rewards are claimed through the shared store.
+            buffer.writeBoolean(RewardMenu.hasSharedStore());
           }
         };
 
@@ -156,7 +163,7 @@ public class RewardsScreen {
             // Get special user rewards
             int specialRewardedDays =
                 SpecialRewardUserData.get().getRewardedDaysForCurrentMonth(uuid);
-            String lastSpecialRewardedDay =
+            int lastSpecialRewardedDay =
                 SpecialRewardUserData.get().getLastRewardedDayForCurrentMonth(uuid);
             CompoundTag specialUserRewardsForCurrentMonth =
                 SpecialRewardUserData.get().getRewardsForCurrentMonthSyncData(uuid);
@@ -168,9 +175,12 @@ public class RewardsScreen {
 
             // Special User Rewards
             buffer.writeInt(specialRewardedDays);
-            buffer.writeUtf(lastSpecialRewardedDay);
+            buffer.writeInt(lastSpecialRewardedDay);
             buffer.writeNbt(specialUserRewardsForCurrentMonth);
             buffer.writeNbt(specialRewardsForCurrentMonth);
+
+            // Synced rewards are claimed through the shared store.
+            buffer.writeBoolean(RewardMenu.hasSharedStore());
           }
         };
 
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Membership index of the special reward users for a single month, with lower-cased player names
+ * and player UUIDs. An empty user list grants special rewards to every player.
+ */
+public class SpecialRewardUsers {
+
+  private static final int UUID_LENGTH = 36;
+
+  private final boolean allUsers;
+  private final Set<String> userNames;
+  private final Set<UUID> userUUIDs;
+
+  private SpecialRewardUsers(boolean allUsers, Set<String> userNames, Set<UUID> userUUIDs) {
+    this.allUsers = allUsers;
+    this.userNames = userNames;
+    this.userUUIDs = userUUIDs;
+  }
+
+  public static SpecialRewardUsers of(List<String> configUsers) {
+    if (configUsers == null
+        || configUsers.isEmpty()
+        || (configUsers.size() == 1 && configUsers.get(0).isEmpty())) {
+      return new SpecialRewardUsers(true, Set.of(), Set.of());
+    }
+
+    Set<String> userNames = new HashSet<>();
+    Set<UUID> userUUIDs = new HashSet<>();
+    for (String configUser : configUsers) {
+      if (configUser == null || configUser.isBlank()) {
+        continue;
+      }
+      String user = configUser.trim();
+      UUID uuid = parseUUID(user);
+      if (uuid != null) {
+        userUUIDs.add(uuid);
+      } else {
+        userNames.add(user.toLowerCase(Locale.ROOT));
+      }
+    }
+    return new SpecialRewardUsers(false, Set.copyOf(userNames), Set.copyOf(userUUIDs));
+  }
+
+  private static UUID parseUUID(String user) {
+    if (user.length() != UUID_LENGTH || user.indexOf('-') < 0) {
+      return null;
+    }
+    try {
+      return UUID.fromString(user);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  public boolean isAllUsers() {
+    return this.allUsers;
+  }
+
+  public boolean contains(String playerName) {
+    return this.allUsers
+        || (playerName != null && this.userNames.contains(playerName.toLowerCase(Locale.ROOT)));
+  }
+
+  public boolean contains(UUID uuid, String playerName) {
+    return this.allUsers || (uuid != null && this.userUUIDs.contains(uuid)) || contains(playerName);
+  }
+
+  public int size() {
+    return this.userNames.size() + this.userUUIDs.size();
+  }
+}
@@ -22,12 +22,12 @@ package de.markusbordihn.dailyrewards.rewards;
 import static de.markusbordihn.dailyrewards.config.ModConfigs.COMMON;
 
 import de.markusbordihn.dailyrewards.Constants;
-import java.time.LocalDate;
+import de.markusbordihn.dailyrewards.config.ModConfigs;
 import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import net.minecraft.world.item.ItemStack;
 import org.apache.logging.log4j.LogManager;
@@ -37,14 +37,20 @@ public class SpecialRewards {
 
   protected static final Logger log = LogManager.getLogger(Constants.LOG_NAME);
 
-  protected static final Random random = new Random();
+  // Special reward users index per month, only valid for the cached config generation.
+  private static final SpecialRewardUsers[] specialRewardUsersCache = new SpecialRewardUsers[12];
+  private static int specialRewardUsersCacheGeneration = -1;
 
   protected SpecialRewards() {}
 
   public static List<ItemStack> calculateSpecialRewardItemsForMonth(int month) {
-    YearMonth yearMonth = YearMonth.of(getCurrentYear(), month);
+    return calculateSpecialRewardItemsForMonth(getCurrentYear(), month);
+  }
+
+  public static List<ItemStack> calculateSpecialRewardItemsForMonth(int year, int month) {
+    YearMonth yearMonth = YearMonth.of(year, month);
     int numberOfDays = yearMonth.lengthOfMonth();
-    List<ItemStack> rewardItemsForMonth = getSpecialRewardItemForMonth(month);
+    List<ItemStack> rewardItemsForMonth = getSpecialRewardItemTemplatesForMonth(month);
 
     // Early return if we have no items.
     if (rewardItemsForMonth.isEmpty()) {
@@ -63,7 +69,8 @@ public class SpecialRewards {
           rewardItemsForMonth.stream().limit(numberOfDays).collect(Collectors.toList());
       if (Boolean.TRUE.equals(COMMON.shuffleRewardsSpecialItems)) {
         log.info("Shuffle special reward items for month {} ...", month);
-        Collections.shuffle(rewardItems);
+        RewardRandom.shuffle(
+            rewardItems, RewardRandom.forMonth(year, month, RewardRandom.SPECIAL_REWARDS_STREAM));
       }
       return rewardItems;
     }
@@ -94,32 +101,44 @@ public class SpecialRewards {
     // Shuffle items before returning.
     if (Boolean.TRUE.equals(COMMON.shuffleRewardsSpecialItems)) {
       log.info("Shuffle special reward items for month {} ...", month);
-      Collections.shuffle(rewardItems);
+      RewardRandom.shuffle(
+          rewardItems, RewardRandom.forMonth(year, month, RewardRandom.SPECIAL_REWARDS_STREAM));
     }
 
     return rewardItems;
   }
 
   public static List<ItemStack> getSpecialRewardItemForMonth(int month) {
+    return RewardsItems.copyItems(getSpecialRewardItemTemplatesForMonth(month));
+  }
+
+  public static List<ItemStack> getSpecialRewardItemTemplatesForMonth(int month) {
+    return RewardPools.get()
+        .resolveItems(
+            RewardPools.getKey(RewardPools.SPECIAL_MONTH, month),
+            RewardsItems.getConfigItems(getSpecialRewardItemConfigForMonth(month)));
+  }
+
+  public static List<String> getSpecialRewardItemConfigForMonth(int month) {
     return switch (month) {
-      case 1 -> RewardsItems.parseConfigItems(COMMON.rewardsJanuarySpecialItems);
-      case 2 -> RewardsItems.parseConfigItems(COMMON.rewardsFebruarySpecialItems);
-      case 3 -> RewardsItems.parseConfigItems(COMMON.rewardsMarchSpecialItems);
-      case 4 -> RewardsItems.parseConfigItems(COMMON.rewardsAprilSpecialItems);
-      case 5 -> RewardsItems.parseConfigItems(COMMON.rewardsMaySpecialItems);
-      case 6 -> RewardsItems.parseConfigItems(COMMON.rewardsJuneSpecialItems);
-      case 7 -> RewardsItems.parseConfigItems(COMMON.rewardsJulySpecialItems);
-      case 8 -> RewardsItems.parseConfigItems(COMMON.rewardsAugustSpecialItems);
-      case 9 -> RewardsItems.parseConfigItems(COMMON.rewardsSeptemberSpecialItems);
-      case 10 -> RewardsItems.parseConfigItems(COMMON.rewardsOctoberSpecialItems);
-      case 11 -> RewardsItems.parseConfigItems(COMMON.rewardsNovemberSpecialItems);
-      case 12 -> RewardsItems.parseConfigItems(COMMON.rewardsDecemberSpecialItems);
-      default -> new ArrayList<>();
+      case 1 -> COMMON.rewardsJanuarySpecialItems;
+      case 2 -> COMMON.rewardsFebruarySpecialItems;
+      case 3 -> COMMON.rewardsMarchSpecialItems;
+      case 4 -> COMMON.rewardsAprilSpecialItems;
+      case 5 -> COMMON.rewardsMaySpecialItems;
+      case 6 -> COMMON.rewardsJuneSpecialItems;
+      case 7 -> COMMON.rewardsJulySpecialItems;
+      case 8 -> COMMON.rewardsAugustSpecialItems;
+      case 9 -> COMMON.rewardsSeptemberSpecialItems;
+      case 10 -> COMMON.rewardsOctoberSpecialItems;
+      case 11 -> COMMON.rewardsNovemberSpecialItems;
+      case 12 -> COMMON.rewardsDecemberSpecialItems;
+      default -> List.of();
     };
   }
 
   public static boolean hasSpecialRewardItemsForMonth(int month) {
-    return !getSpecialRewardItemForMonth(month).isEmpty();
+    return !getSpecialRewardItemTemplatesForMonth(month).isEmpty();
   }
 
   public static boolean hasSpecialRewardItemsForCurrentMonth() {
@@ -127,31 +146,37 @@ public class SpecialRewards {
   }
 
   public static int getCurrentDay() {
-    return LocalDate.now().getDayOfMonth();
+    return Rewards.getCurrentDay();
   }
 
   public static int getCurrentMonth() {
-    return LocalDate.now().getMonthValue();
+    return Rewards.getCurrentMonth();
   }
 
   public static int getCurrentYear() {
-    return LocalDate.now().getYear();
+    return Rewards.getCurrentYear();
   }
 
   public static String getCurrentYearMonthDay() {
-    return getCurrentYear() + "-" + getCurrentMonth() + "-" + getCurrentDay();
+    return Rewards.getCurrentYearMonthDay();
   }
 
   public static int getDaysCurrentMonth() {
-    YearMonth yearMonth = YearMonth.of(getCurrentYear(), getCurrentMonth());
-    return yearMonth.lengthOfMonth();
+    return Rewards.getDaysCurrentMonth();
   }
 
   public static int getDaysLeftCurrentMonth() {
-    return getDaysCurrentMonth() - getCurrentDay();
+    return Rewards.getDaysLeftCurrentMonth();
   }
 
   public static List<String> getSpecialRewardUsersForMonth(int month) {
+    return RewardPools.get()
+        .resolvePlayers(
+            RewardPools.getKey(RewardPools.SPECIAL_MONTH, month),
+            getSpecialRewardUsersConfigForMonth(month));
+  }
+
+  public static List<String> getSpecialRewardUsersConfigForMonth(int month) {
     return switch (month) {
       case 1 -> COMMON.rewardsJanuarySpecialUsers;
       case 2 -> COMMON.rewardsFebruarySpecialUsers;
@@ -173,12 +198,33 @@ public class SpecialRewards {
     return getSpecialRewardUsersForMonth(getCurrentMonth());
   }
 
+  public static SpecialRewardUsers getSpecialRewardUsersIndexForMonth(int month) {
+    if (month < 1 || month > 12) {
+      return SpecialRewardUsers.of(null);
+    }
+    synchronized (specialRewardUsersCache) {
+      if (specialRewardUsersCacheGeneration != ModConfigs.getGeneration()) {
+        Arrays.fill(specialRewardUsersCache, null);
+        specialRewardUsersCacheGeneration = ModConfigs.getGeneration();
+      }
+      SpecialRewardUsers specialRewardUsers = specialRewardUsersCache[month - 1];
+      if (specialRewardUsers == null) {
+        specialRewardUsers = SpecialRewardUsers.of(getSpecialRewardUsersForMonth(month));
+        specialRewardUsersCache[month - 1] = specialRewardUsers;
+      }
+      return specialRewardUsers;
+    }
+  }
+
+  public static SpecialRewardUsers getSpecialRewardUsersIndexForCurrentMonth() {
+    return getSpecialRewardUsersIndexForMonth(getCurrentMonth());
+  }
+
   public static boolean isSpecialRewardUserForCurrentMonth(String playerName) {
-    List<String> specialRewardUsersForCurrentMonth = getSpecialRewardUsersForCurrentMonth();
-    return specialRewardUsersForCurrentMonth == null
-        || specialRewardUsersForCurrentMonth.isEmpty()
-        || (getSpecialRewardUsersForCurrentMonth().size() == 1
-            && specialRewardUsersForCurrentMonth.get(0).isEmpty())
-        || specialRewardUsersForCurrentMonth.contains(playerName);
+    return getSpecialRewardUsersIndexForCurrentMonth().contains(playerName);
+  }
+
+  public static boolean isSpecialRewardUserForCurrentMonth(UUID uuid, String playerName) {
+    return getSpecialRewardUsersIndexForCurrentMonth().contains(uuid, playerName);
   }
 }
@@ -0,0 +1,16 @@
+package de.markusbordihn.dailyrewards.config;
+
+/** Publishes configs for tests without reading or writing the config file. */
+public class TestConfigs {
+
+  protected TestConfigs() {}
+
+  /** Publishes the default config with the given reward seed. */
+  public static CommonConfig applyDefaultConfig(long rewardSeed) {
+    CommonConfig config = new CommonConfig();
+    config.reset();
+    config.rewardSeed = rewardSeed;
+    ModConfigs.applyConfig(config);
+    return config;
+  }
+}
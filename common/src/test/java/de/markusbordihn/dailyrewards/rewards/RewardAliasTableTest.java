@@ -0,0 +1,94 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+class RewardAliasTableTest {
+
+  private static final int SAMPLES = 1_000_000;
+  private static final double TOLERANCE = 0.005;
+
+  @Test
+  void sampleFollowsWeights() {
+    double[] weights = {1, 2, 0, 5, 2, 0.5};
+    int[] samples = sample(new RewardAliasTable(weights), weights.length);
+    double totalWeight = 10.5;
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals(
+          weights[i] / totalWeight, (double) samples[i] / SAMPLES, TOLERANCE, "index " + i);
+    }
+    assertEquals(0, samples[2], "index with zero weight was sampled");
+  }
+
+  @Test
+  void sampleTreatsNegativeWeightsAsZero() {
+    double[] weights = {-3, 1, 1};
+    int[] samples = sample(new RewardAliasTable(weights), weights.length);
+    assertEquals(0, samples[0]);
+    assertEquals(0.5, (double) samples[1] / SAMPLES, TOLERANCE);
+  }
+
+  @Test
+  void sampleSingleWeight() {
+    int[] samples = sample(new RewardAliasTable(new double[] {3}), 1);
+    assertEquals(SAMPLES, samples[0]);
+  }
+
+  @Test
+  void sampleIsStableForSeed() {
+    RewardAliasTable aliasTable = new RewardAliasTable(new double[] {1, 2, 3, 4});
+    SplittableRandom random = new SplittableRandom(42);
+    SplittableRandom otherRandom = new SplittableRandom(42);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(aliasTable.sample(random), aliasTable.sample(otherRandom));
+    }
+  }
+
+  @Test
+  void allZeroWeightsAreEmpty() {
+    RewardAliasTable aliasTable = new RewardAliasTable(new double[] {0, 0, 0});
+    assertTrue(aliasTable.isEmpty());
+    assertEquals(3, aliasTable.size());
+    SplittableRandom random = new SplittableRandom(42);
+    assertThrows(IllegalStateException.class, () -> aliasTable.sample(random));
+  }
+
+  @Test
+  void noWeightsAreEmpty() {
+    assertTrue(new RewardAliasTable(new double[0]).isEmpty());
+    assertFalse(new RewardAliasTable(new double[] {0, 1}).isEmpty());
+  }
+
+  private static int[] sample(RewardAliasTable aliasTable, int size) {
+    SplittableRandom random = new SplittableRandom(42);
+    int[] samples = new int[size];
+    for (int i = 0; i < SAMPLES; i++) {
+      samples[aliasTable.sample(random)]++;
+    }
+    return samples;
+  }
+}
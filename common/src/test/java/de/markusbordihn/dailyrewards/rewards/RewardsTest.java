@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 Markus Bordihn
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.markusbordihn.dailyrewards.rewards;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.markusbordihn.dailyrewards.config.ModConfigs;
+import de.markusbordihn.dailyrewards.config.TestConfigs;
+import java.time.YearMonth;
+import java.util.List;
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.item.ItemStack;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class RewardsTest {
+
+  private static final int YEAR = 2024;
+  private static final long REWARD_SEED = 42;
+
+  @BeforeAll
+  static void bootstrap() {
+    SharedConstants.tryDetectVersion();
+    Bootstrap.bootStrap();
+  }
+
+  @Test
+  void calculateRewardItemsForMonthIsStableForRewardSeed() {
+    TestConfigs.applyDefaultConfig(REWARD_SEED);
+    for (int month = 1; month <= 12; month++) {
+      List<ItemStack> rewardItems = Rewards.calculateRewardItemsForMonth(YEAR, month);
+      assertEquals(YearMonth.of(YEAR, month).lengthOfMonth(), rewardItems.size());
+
+      // Caches are rebuilt like after a restart, the plan must not depend on them.
+      ModConfigs.invalidateCaches();
+      assertTrue(
+          matches(rewardItems, Rewards.calculateRewardItemsForMonth(YEAR, month)),
+          "Reward items for month " + month + " were not regenerated identically.");
+    }
+  }
+
+  @Test
+  void calculateRewardItemsForMonthIsStableAfterConfigReload() {
+    TestConfigs.applyDefaultConfig(REWARD_SEED);
+    List<ItemStack> rewardItems = Rewards.calculateRewardItemsForMonth(YEAR, 2);
+    TestConfigs.applyDefaultConfig(REWARD_SEED);
+    assertTrue(matches(rewardItems, Rewards.calculateRewardItemsForMonth(YEAR, 2)));
+  }
+
+  @Test
+  void calculateRewardItemsForMonthDependsOnRewardSeed() {
+    TestConfigs.applyDefaultConfig(REWARD_SEED);
+    List<ItemStack> rewardItems = Rewards.calculateRewardItemsForMonth(YEAR, 1);
+    TestConfigs.applyDefaultConfig(REWARD_SEED + 1);
+    assertFalse(matches(rewardItems, Rewards.calculateRewardItemsForMonth(YEAR, 1)));
+  }
+
+  private static boolean matches(List<ItemStack> items, List<ItemStack> otherItems) {
+    if (items.size() != otherItems.size()) {
+      return false;
+    }
+    for (int i = 0; i < items.size(); i++) {
+      if (!ItemStack.matches(items.get(i), otherItems.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}